@@ -0,0 +1,187 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.scm.ChangeLogSet;
+import jenkins.scm.RunWithSCM;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Skips the scan of a build whose SCM changes contain nothing to scan, such as documentation or CI configuration
+ * changes: no file selected by the SAST filters and no dependency manifest.
+ * <p>
+ * The results of the last scanned build of the job are kept in {@value #DIR_NAME} in the job directory, with the
+ * scan settings they were produced with. A skipped build carries them forward, so its build page, workspace reports,
+ * thresholds and environment variables are the same as if it had scanned. Builds with other scan settings scan.
+ * The changes of every build since the last scanned one are taken into account, so changes of a build that failed
+ * before scanning are not lost.
+ */
+final class ChangesetScanFilter {
+
+    static final String DIR_NAME = "checkmarx-last-results";
+    private static final String BUILD_FILE = "build.txt";
+    private static final String SETTINGS_FILE = "settings.txt";
+
+    // Dependency manifests and lock files read by the SCA resolver and OSA, by file name.
+    private static final Set<String> MANIFESTS = new HashSet<>(Arrays.asList(
+            "pom.xml", "build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts", "gradle.lockfile",
+            "ivy.xml", "build.sbt", "package.json", "package-lock.json", "npm-shrinkwrap.json", "yarn.lock",
+            "pnpm-lock.yaml", "bower.json", "requirements.txt", "setup.py", "setup.cfg", "pipfile", "pipfile.lock",
+            "pyproject.toml", "poetry.lock", "go.mod", "go.sum", "gopkg.lock", "gemfile", "gemfile.lock",
+            "composer.json", "composer.lock", "packages.config", "packages.lock.json", "paket.dependencies",
+            "paket.lock", "directory.packages.props", "cargo.toml", "cargo.lock", "podfile", "podfile.lock",
+            "cartfile", "cartfile.resolved", "package.swift", "package.resolved", "pubspec.yaml", "pubspec.lock",
+            "conanfile.txt", "conanfile.py", "mix.exs", "mix.lock"));
+    private static final List<String> MANIFEST_EXTENSIONS = Arrays.asList(".csproj", ".vbproj", ".fsproj",
+            ".nuspec", ".gemspec", ".cabal");
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    private ChangesetScanFilter() {
+    }
+
+    /**
+     * @param settingsKey hash of the scan settings of the build, without its commit
+     * @return why the scan of the build can be skipped, null if it must scan
+     */
+    static String skipReason(Run<?, ?> run, CxScanConfig config, String settingsKey) {
+        int lastScannedBuild = getLastScannedBuild(run.getParent());
+        if (lastScannedBuild <= 0 || lastScannedBuild >= run.getNumber()) {
+            return null;
+        }
+        if (!settingsKey.equals(readFile(new File(getDir(run.getParent()), SETTINGS_FILE)))) {
+            // The last results were produced with other settings, e.g. another project or scanners.
+            return null;
+        }
+        Set<String> paths = changedPaths(run, lastScannedBuild);
+        if (paths == null || paths.isEmpty()) {
+            return null;
+        }
+
+        SourceFileMatcher sources = new SourceFileMatcher(config.getSastFilterPattern(), config.getSastFolderExclusions());
+        boolean dependencies = config.isAstScaEnabled() || config.isOsaEnabled();
+        for (String path : paths) {
+            if (config.isSastEnabled() && sources.matches(path)) {
+                return null;
+            }
+            if (dependencies && isDependencyManifest(path)) {
+                return null;
+            }
+        }
+        return "none of the " + paths.size() + " files changed since build #" + lastScannedBuild + " is "
+                + (config.isSastEnabled() ? "selected by the SAST filters" : "")
+                + (config.isSastEnabled() && dependencies ? " or " : "")
+                + (dependencies ? "a dependency manifest" : "");
+    }
+
+    /**
+     * @return paths changed by the builds after the given one up to this build, null if a build has no SCM
+     */
+    private static Set<String> changedPaths(Run<?, ?> run, int sinceBuild) {
+        Set<String> paths = new HashSet<>();
+        for (Run<?, ?> build = run; build != null && build.getNumber() > sinceBuild; build = build.getPreviousBuild()) {
+            if (!(build instanceof RunWithSCM)) {
+                return null;
+            }
+            for (ChangeLogSet<? extends ChangeLogSet.Entry> changeSet : ((RunWithSCM<?, ?>) build).getChangeSets()) {
+                for (ChangeLogSet.Entry entry : changeSet) {
+                    for (ChangeLogSet.AffectedFile file : entry.getAffectedFiles()) {
+                        paths.add(file.getPath());
+                    }
+                }
+            }
+        }
+        return paths;
+    }
+
+    static boolean isDependencyManifest(String path) {
+        String name = StringUtils.substringAfterLast("/" + path.replace('\\', '/'), "/").toLowerCase();
+        if (MANIFESTS.contains(name)) {
+            return true;
+        }
+        for (String extension : MANIFEST_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the reports of the last scanned build of the job to the given directory.
+     *
+     * @return a copy of the results of the last scanned build, null if there are none
+     */
+    static RemoteScanInfo carryForward(Job<?, ?> job, File reportsDir) {
+        synchronized (ChangesetScanFilter.class) {
+            try {
+                return ScanResultCache.read(getDir(job), reportsDir);
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                serverLog.warn("Failed to read the last Checkmarx scan results of " + job.getFullName() + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Keeps the results of a scanned build for the builds that skip their scan.
+     *
+     * @param settingsKey hash of the scan settings of the build, without its commit
+     * @param snapshot    serialized {@link RemoteScanInfo} of the scan
+     * @param reportsDir  directory holding the build page reports and the copy of the workspace reports
+     */
+    static void recordScannedBuild(Run<?, ?> run, String settingsKey, byte[] snapshot, File reportsDir) {
+        synchronized (ChangesetScanFilter.class) {
+            if (run.getNumber() < getLastScannedBuild(run.getParent())) {
+                return;
+            }
+            File dir = getDir(run.getParent());
+            try {
+                ScanResultCache.write(dir, snapshot, reportsDir);
+                Files.write(new File(dir, SETTINGS_FILE).toPath(), settingsKey.getBytes(StandardCharsets.UTF_8));
+                Files.write(new File(dir, BUILD_FILE).toPath(),
+                        String.valueOf(run.getNumber()).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | ClassNotFoundException e) {
+                serverLog.warn("Failed to save the Checkmarx scan results of " + run.getFullDisplayName() + ": " + e.getMessage());
+                FileUtils.deleteQuietly(dir);
+            }
+        }
+    }
+
+    static int getLastScannedBuild(Job<?, ?> job) {
+        try {
+            return Integer.parseInt(StringUtils.defaultString(readFile(new File(getDir(job), BUILD_FILE))));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the trimmed content of the file, null if it cannot be read
+     */
+    private static String readFile(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static File getDir(Job<?, ?> job) {
+        return new File(job.getRootDir(), DIR_NAME);
+    }
+}
@@ -15,6 +15,17 @@ class CommonClientFactory {
                                     boolean enableCertificateValidation,
                                     Logger log)
             throws MalformedURLException, CxClientException {
+        return getInstance(toScanConfig(connDetails, enableCertificateValidation), log);
+    }
+
+    static CxScanStatusClient getStatusClient(CxConnectionDetails connDetails,
+                                              boolean enableCertificateValidation,
+                                              Logger log)
+            throws MalformedURLException, CxClientException {
+        return getStatusClient(toScanConfig(connDetails, enableCertificateValidation), log);
+    }
+
+    private static CxScanConfig toScanConfig(CxConnectionDetails connDetails, boolean enableCertificateValidation) {
         CxScanConfig scanConfig = new CxScanConfig(connDetails.getServerUrl(),
                 connDetails.getUsername(),
                 Aes.decrypt(connDetails.getPassword(), connDetails.getUsername()),
@@ -29,8 +40,7 @@ class CommonClientFactory {
         } else {
             scanConfig.setProxy(false);
         }
-
-        return getInstance(scanConfig, log);
+        return scanConfig;
     }
 
     static LegacyClient getInstance(CxScanConfig config, Logger log)
@@ -39,6 +49,11 @@ class CommonClientFactory {
         };
     }
 
+    static CxScanStatusClient getStatusClient(CxScanConfig config, Logger log)
+            throws MalformedURLException, CxClientException {
+        return new CxScanStatusClient(config, log);
+    }
+
     static CxClientDelegator getClientDelegatorInstance(CxScanConfig config, Logger log)
             throws MalformedURLException, CxClientException {
         return new CxClientDelegator(config, log);
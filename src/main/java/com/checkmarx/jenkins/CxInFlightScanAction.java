@@ -0,0 +1,43 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.InvisibleAction;
+
+/**
+ * Records a SAST scan submitted by a build whose results were not collected yet. The action is saved with the
+ * build as soon as the scan is submitted, so when the build dies with the controller or the agent, the next
+ * build of the job can reattach to the scan instead of scanning the same sources again.
+ * <p>
+ * Only recorded when the controller follows the scan status, see "Follow SAST scan status from the controller".
+ * When the agent waits for the scan, the scan id is not known before the results are returned.
+ */
+public class CxInFlightScanAction extends InvisibleAction {
+
+    private final long scanId;
+    // Server and project of the scan, see SourceDigestStore#keyOf.
+    private final String projectKey;
+    private boolean completed;
+
+    CxInFlightScanAction(long scanId, String projectKey) {
+        this.scanId = scanId;
+        this.projectKey = projectKey;
+    }
+
+    public long getScanId() {
+        return scanId;
+    }
+
+    String getProjectKey() {
+        return projectKey;
+    }
+
+    /**
+     * @return whether the results of the scan were collected, by this build or by a build that reattached to it
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+}
@@ -0,0 +1,65 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.io.IOException;
+
+/**
+ * Records a scan that was submitted by a build step running with deferred results. The results are retrieved
+ * and processed later by the {@code checkmarxWaitForResults} pipeline step, outside of the node that submitted
+ * the scan.
+ * <p>
+ * The action is saved with the build, so a wait survives a controller restart. It keeps the scan id and the
+ * settings of the submitting step without its username and password, credentials are resolved again from the
+ * credentials id or the global configuration.
+ */
+public class CxPendingScanAction extends InvisibleAction {
+
+    // Copy of the submitting step without credentials, used to resolve the same configuration once results are processed.
+    private final CxScanBuilder builder;
+    private final long scanId;
+    private final String projectName;
+    // 0 for scans recorded before the submission time was kept.
+    private final long submittedAt;
+    private boolean processed;
+
+    CxPendingScanAction(CxScanBuilder builder, long scanId, String projectName) {
+        this.builder = builder;
+        this.scanId = scanId;
+        this.projectName = projectName;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    CxScanBuilder getBuilder() {
+        return builder;
+    }
+
+    public long getScanId() {
+        return scanId;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public boolean isProcessed() {
+        return processed;
+    }
+
+    /**
+     * Marks the results as processed and saves the build.
+     */
+    void markProcessed(Run<?, ?> run) {
+        processed = true;
+        try {
+            run.save();
+        } catch (IOException e) {
+            // The flag is also kept in memory, it only matters after a restart.
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.jfree.ui.RectangleInsets;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
+import javax.servlet.ServletOutputStream;
 import java.awt.*;
 import java.io.IOException;
 import java.util.*;
@@ -32,6 +33,10 @@ import java.util.List;
  */
 public class CxProjectResult implements Action {
 
+    // Shared by all jobs, CxProjectResult instances are created per request.
+    private static final CxTrendGraphCache GRAPH_CACHE = new CxTrendGraphCache();
+    private static final int MAX_GRAPH_SIZE = 2000;
+
     private AbstractProject owner;
 
     public CxProjectResult(AbstractProject owner) {
@@ -148,7 +153,11 @@ public class CxProjectResult implements Action {
             return;
         }
 
-        ChartUtil.generateGraph(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+        CxTrendGraphCache.Graph graph = getGraph(req);
+        rsp.setContentType("image/png");
+        ServletOutputStream os = rsp.getOutputStream();
+        os.write(graph.getPng());
+        os.close();
     }
 
     /**
@@ -159,7 +168,34 @@ public class CxProjectResult implements Action {
         if (cxScanResult != null && req.checkIfModified(cxScanResult.owner.getTimestamp(), rsp)) {
             return;
         }
-        ChartUtil.generateClickableMap(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+        CxTrendGraphCache.Graph graph = getGraph(req);
+        rsp.setContentType("text/plain;charset=UTF-8");
+        rsp.getWriter().println(graph.getImageMap());
+    }
+
+    /**
+     * Returns the trend graph for the requested size, rendering it only if a new scan result was recorded
+     * since it was last rendered.
+     */
+    private CxTrendGraphCache.Graph getGraph(StaplerRequest req) throws IOException {
+        Area defaultSize = calcDefaultSize();
+        int width = parseSize(req.getParameter("width"), defaultSize.width);
+        int height = parseSize(req.getParameter("height"), defaultSize.height);
+        int window = getTrendBuildWindow();
+        String key = owner.getFullName() + '|' + width + 'x' + height + '|' + window + '|' + getRelPath(req);
+        return GRAPH_CACHE.get(key, CxTrendIndex.getVersion(owner), width, height,
+                () -> createChart(req, buildDataSet(window)));
+    }
+
+    private static int parseSize(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_GRAPH_SIZE, Integer.parseInt(value)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     /**
@@ -177,10 +213,10 @@ public class CxProjectResult implements Action {
         }
     }
 
-    private CategoryDataset buildDataSet(StaplerRequest req) {
+    private CategoryDataset buildDataSet(int window) {
 
-        CxScanResult lastBuildAction = getLastSynchronousSASTBuildAction();
-        if (lastBuildAction == null) {
+        List<CxTrendIndex.Entry> entries = CxTrendIndex.read(owner, window);
+        if (entries.isEmpty()) {
             // We get here is there are no builds with scan results.
             // In this case we generate an empty graph
             DataSetBuilder<CxResultSeverity, String> dsb = new DataSetBuilder<CxResultSeverity, String>();
@@ -192,19 +228,25 @@ public class CxProjectResult implements Action {
             return dsb.build();
 
         } else {
-            DataSetBuilder<CxResultSeverity, ChartUtil.NumberOnlyBuildLabel> dsb = new DataSetBuilder<CxResultSeverity, ChartUtil.NumberOnlyBuildLabel>();
+            DataSetBuilder<CxResultSeverity, CxTrendIndex.Entry> dsb = new DataSetBuilder<CxResultSeverity, CxTrendIndex.Entry>();
 
-            for (CxScanResult a = lastBuildAction; a != null; a = a.getPreviousResult()) {
-            	dsb.add(a.getCriticalCount(), CxResultSeverity.CRITICAL, new ChartUtil.NumberOnlyBuildLabel((Run<?, ?>) a.owner));
-            	dsb.add(a.getHighCount(), CxResultSeverity.HIGH, new ChartUtil.NumberOnlyBuildLabel((Run<?, ?>) a.owner));
-                dsb.add(a.getMediumCount(), CxResultSeverity.MEDIUM, new ChartUtil.NumberOnlyBuildLabel((Run<?, ?>) a.owner));
-                dsb.add(a.getLowCount(), CxResultSeverity.LOW, new ChartUtil.NumberOnlyBuildLabel((Run<?, ?>) a.owner));
+            for (CxTrendIndex.Entry entry : entries) {
+                dsb.add(entry.critical, CxResultSeverity.CRITICAL, entry);
+                dsb.add(entry.high, CxResultSeverity.HIGH, entry);
+                dsb.add(entry.medium, CxResultSeverity.MEDIUM, entry);
+                dsb.add(entry.low, CxResultSeverity.LOW, entry);
             }
             return dsb.build();
         }
 
     }
 
+    private int getTrendBuildWindow() {
+        @Nullable
+        CxScanBuilder.DescriptorImpl descriptor = (CxScanBuilder.DescriptorImpl) Jenkins.getInstance().getDescriptor(CxScanBuilder.class);
+        return descriptor != null ? descriptor.getTrendBuildWindow() : CxTrendIndex.DEFAULT_WINDOW;
+    }
+
     private JFreeChart createChart(StaplerRequest req, CategoryDataset dataset) {
 
         final String relPath = getRelPath(req);
@@ -246,8 +288,11 @@ public class CxProjectResult implements Action {
         StackedAreaRenderer ar = new StackedAreaRenderer2() {
             @Override
             public String generateURL(CategoryDataset dataset, int row, int column) {
-                ChartUtil.NumberOnlyBuildLabel label = (ChartUtil.NumberOnlyBuildLabel) dataset.getColumnKey(column);
-                return relPath + label.build.getNumber() + "/testReport/"; // TODO: Check if need to change testReport
+                Object key = dataset.getColumnKey(column);
+                if (!(key instanceof CxTrendIndex.Entry)) {
+                    return null;
+                }
+                return relPath + ((CxTrendIndex.Entry) key).number + "/testReport/"; // TODO: Check if need to change testReport
                 // to checkmarx
             }
         };
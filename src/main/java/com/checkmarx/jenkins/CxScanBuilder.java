@@ -16,7 +16,6 @@ import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 import com.cx.restclient.CxClientDelegator;
 import com.cx.restclient.ast.dto.sca.AstScaConfig;
 import com.cx.restclient.ast.dto.sca.AstScaResults;
-import com.cx.restclient.common.summary.SummaryUtils;
 import com.cx.restclient.configuration.CxScanConfig;
 import com.cx.restclient.dto.*;
 import com.cx.restclient.dto.scansummary.ScanSummary;
@@ -26,12 +25,11 @@ import com.cx.restclient.sast.dto.Project;
 import com.cx.restclient.sast.dto.*;
 import com.cx.restclient.sast.utils.LegacyClient;
 import com.cx.restclient.sca.utils.CxSCAFileSystemUtils;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import freemarker.template.TemplateException;
 import hudson.*;
 import hudson.model.*;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
+import hudson.scm.ChangeLogSet;
 import hudson.triggers.SCMTrigger;
 import hudson.util.ComboBoxModel;
 import hudson.util.FormValidation;
@@ -39,10 +37,10 @@ import hudson.util.ListBoxModel;
 import hudson.util.Secret;
 import io.netty.util.internal.StringUtil;
 import jenkins.model.Jenkins;
+import jenkins.scm.RunWithSCM;
 import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
@@ -54,19 +52,20 @@ import org.kohsuke.stapler.verb.POST;
 import javax.annotation.Nonnull;
 import javax.naming.ConfigurationException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.io.*;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -98,6 +97,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     private static final String SCA_PDF_URL_TEMPLATE = "/%scheckmarx/scaPdfReport";
     private static final String SCA_PDF_URL = "checkmarx/scaPdfReport";
     private static final String REQUEST_ORIGIN = "Jenkins";
+    private static final String CX_ORIGIN = "jenkins";
     
     private static final String SUPPRESS_BENIGN_ERRORS = "suppressBenignErrors";
 
@@ -107,6 +107,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     private static final String PROJECT_DEFAULT_CONFIGURATION_NAME = "Project Default";
     private static final int PROJECT_DEFAULT_CONFIGURATION_ID = 0;
 
+    // How long an aborted build waits for the server to cancel its scan.
+    static final long CANCEL_GRACE_SECONDS = 30;
+
     //////////////////////////////////////////////////////////////////////////////////////
     // Persistent plugin configuration parameters
     //////////////////////////////////////////////////////////////////////////////////////
@@ -159,6 +162,8 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     private boolean incremental;
     private boolean fullScansScheduled;
     private int fullScanCycle;
+    private int fullScanChangedFiles;
+    private int fullScanIntervalDays;
     private boolean isThisBuildIncremental;
     private int postScanActionId;
     @Nullable
@@ -167,6 +172,18 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     private String comment;
     private boolean skipSCMTriggers;
     private boolean waitForResultsEnabled;
+    private boolean deferResults;
+    private boolean skipUnchangedSources;
+    private boolean supersedeQueuedScans;
+    private boolean skipUnscannableChanges;
+    @Nullable
+    private String excludeResultStates;
+    @Nullable
+    private String excludeResultSeverities;
+    @Nullable
+    private String excludeResultQueries;
+    @Nullable
+    private String excludeResultPaths;
     private boolean vulnerabilityThresholdEnabled;
     @Nullable
     private Integer criticalThreshold;
@@ -179,6 +196,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     private boolean failBuildOnNewResults;
     private String failBuildOnNewSeverity;
     private boolean generatePdfReport;
+    private boolean deferPdfReport;
     private boolean generateScaReport;
     private boolean enableProjectPolicyEnforcement;
 
@@ -220,7 +238,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
     private static final String CONFIG_AS_CODE_FILE_NAME = "cx.config";
     //Print to job console, initialized within perform
-    CxLoggerAdapter log;
+    transient CxLoggerAdapter log;
 
     private JobStatusOnError jobStatusOnError;
     private ScaReportFormat scaReportFormat;
@@ -490,6 +508,20 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return fullScanCycle;
     }
 
+    /**
+     * @return number of files changed since the last full scan that triggers a full scan, 0 for no limit
+     */
+    public int getFullScanChangedFiles() {
+        return fullScanChangedFiles;
+    }
+
+    /**
+     * @return days after the last full scan that trigger a full scan, 0 for no limit
+     */
+    public int getFullScanIntervalDays() {
+        return fullScanIntervalDays;
+    }
+
     public int getPostScanActionId() {
         return postScanActionId;
     }
@@ -521,6 +553,93 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return waitForResultsEnabled;
     }
 
+    public boolean isDeferResults() {
+        return deferResults;
+    }
+
+    @DataBoundSetter
+    public void setDeferResults(boolean deferResults) {
+        this.deferResults = deferResults;
+    }
+
+    public boolean isSkipUnchangedSources() {
+        return skipUnchangedSources;
+    }
+
+    public boolean isSupersedeQueuedScans() {
+        return supersedeQueuedScans;
+    }
+
+    @DataBoundSetter
+    public void setSupersedeQueuedScans(boolean supersedeQueuedScans) {
+        this.supersedeQueuedScans = supersedeQueuedScans;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchangedSources(boolean skipUnchangedSources) {
+        this.skipUnchangedSources = skipUnchangedSources;
+    }
+
+    public boolean isSkipUnscannableChanges() {
+        return skipUnscannableChanges;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnscannableChanges(boolean skipUnscannableChanges) {
+        this.skipUnscannableChanges = skipUnscannableChanges;
+    }
+
+    /**
+     * @return SAST result state ids dropped from the results, Not Exploitable if never configured
+     */
+    public String getExcludeResultStates() {
+        return excludeResultStates == null ? SastResultFilter.DEFAULT_EXCLUDED_STATES : excludeResultStates;
+    }
+
+    @DataBoundSetter
+    public void setExcludeResultStates(@Nullable String excludeResultStates) {
+        this.excludeResultStates = excludeResultStates;
+    }
+
+    @Nullable
+    public String getExcludeResultSeverities() {
+        return excludeResultSeverities;
+    }
+
+    @DataBoundSetter
+    public void setExcludeResultSeverities(@Nullable String excludeResultSeverities) {
+        this.excludeResultSeverities = excludeResultSeverities;
+    }
+
+    @Nullable
+    public String getExcludeResultQueries() {
+        return excludeResultQueries;
+    }
+
+    @DataBoundSetter
+    public void setExcludeResultQueries(@Nullable String excludeResultQueries) {
+        this.excludeResultQueries = excludeResultQueries;
+    }
+
+    @Nullable
+    public String getExcludeResultPaths() {
+        return excludeResultPaths;
+    }
+
+    @DataBoundSetter
+    public void setExcludeResultPaths(@Nullable String excludeResultPaths) {
+        this.excludeResultPaths = excludeResultPaths;
+    }
+
+    private SastResultFilter.Settings getResultFilterSettings() {
+        SastResultFilter.Settings settings = new SastResultFilter.Settings();
+        settings.setStates(getExcludeResultStates());
+        settings.setSeverities(excludeResultSeverities);
+        settings.setQueries(excludeResultQueries);
+        settings.setPaths(excludeResultPaths);
+        return settings;
+    }
+
     public boolean isVulnerabilityThresholdEnabled() {
         return vulnerabilityThresholdEnabled;
     }
@@ -649,6 +768,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     public boolean isGeneratePdfReport() {
         return generatePdfReport;
     }
+
+    public boolean isDeferPdfReport() {
+        return deferPdfReport;
+    }
     
     public boolean isGenerateScaReport() {
 		return generateScaReport;
@@ -771,6 +894,16 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         this.fullScanCycle = fullScanCycle;
     }
 
+    @DataBoundSetter
+    public void setFullScanChangedFiles(int fullScanChangedFiles) {
+        this.fullScanChangedFiles = fullScanChangedFiles;
+    }
+
+    @DataBoundSetter
+    public void setFullScanIntervalDays(int fullScanIntervalDays) {
+        this.fullScanIntervalDays = fullScanIntervalDays;
+    }
+
     @DataBoundSetter
     public void setThisBuildIncremental(boolean thisBuildIncremental) {
         isThisBuildIncremental = thisBuildIncremental;
@@ -825,6 +958,11 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     public void setGeneratePdfReport(boolean generatePdfReport) {
         this.generatePdfReport = generatePdfReport;
     }
+
+    @DataBoundSetter
+    public void setDeferPdfReport(boolean deferPdfReport) {
+        this.deferPdfReport = deferPdfReport;
+    }
     
     @DataBoundSetter
     public void setGenerateScaReport(boolean generateScaReport) {
@@ -1018,13 +1156,14 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         setJvmVars(env);
         Map<String, String> fsaVars = getAllFsaVars(env, workspace.getRemote());
         CxScanConfig config;
+        SastResultFilter.Settings resultFilters = getResultFilterSettings();
 		try {
 			config = resolveConfiguration(run, descriptor, env, log,  workspace);
             System.setProperty(KEY_DEFAULT_ENGINE_CONFIGURATIONID, String.valueOf(PROJECT_DEFAULT_CONFIGURATION_ID));
         
         if (configAsCode) {
             try {
-                overrideConfigAsCode(config, workspace);
+                overrideConfigAsCode(config, resultFilters, workspace);
             } catch (ConfigurationException e) {
                 log.warn("couldn't load config file: " + e.getMessage(), e);
             }
@@ -1040,20 +1179,711 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             return;
         }
 
+        boolean skipUnscannable = isSkipUnscannableChanges() && !isForceScan() && config.getSynchronous();
+        if (skipUnscannable && processSkippedScan(run, workspace, config, resultFilters)) {
+            return;
+        }
+
+        final CxScanCallable action = createScanCallable(config, listener, fsaVars);
+        action.setMaxConcurrentScans(descriptor.getMaxConcurrentScansPerAgent());
+        action.setJobName(run.getParent().getFullName());
+        action.setResultFilter(SastResultFilter.of(resultFilters));
+        action.setPackageSources(descriptor.isParallelSourcePackaging());
+        setReportOptions(action, run, config, descriptor);
+        boolean deferred = isDeferResults() && config.getSynchronous();
+        if (deferred && (!config.isSastEnabled() || config.isAstScaEnabled() || config.isOsaEnabled())) {
+            log.warn("Deferred results only follow SAST scans, dependency scans are enabled or SAST is disabled: " +
+                    "waiting for the scan results in this step.");
+            deferred = false;
+        }
+        if (deferred && !usesStoredCredentials()) {
+            log.warn("Deferred results need credentials from the credentials store or the global server, " +
+                    "waiting for the scan results in this step.");
+            deferred = false;
+        }
+        boolean sharedPolling = !deferred && config.getSynchronous() && config.isSastEnabled()
+                && descriptor.isSharedStatusPolling();
+        action.setSubmitOnly(deferred || sharedPolling);
+        action.setKeepSubmittedScan(sharedPolling);
+        String sourceDigestKey = setSourceDigestCheck(action, config);
+
+        long resultCacheBytes = descriptor.getResultCacheSizeMb() * 1024L * 1024L;
+        String resultCacheKey = !deferred && config.getSynchronous() && resultCacheBytes > 0 && !isForceScan()
+                ? coalescingKey(env, config, resultFilters) : null;
+        if (resultCacheKey != null && processCachedScan(run, workspace, config, resultCacheKey)) {
+            return;
+        }
+
+        ScanCoalescer.Flight flight = null;
+        String coalescingKey = !deferred && config.getSynchronous() && descriptor.isCoalesceDuplicateScans()
+                ? coalescingKey(env, config, resultFilters) : null;
+        if (coalescingKey != null) {
+            flight = ScanCoalescer.join(coalescingKey, run.getFullDisplayName());
+            if (!flight.isLeader()) {
+                if (processCoalescedScan(run, workspace, config, flight)) {
+                    return;
+                }
+                flight = null;
+            }
+        }
+        if (isSupersedeQueuedScans() && !descriptor.isSharedStatusPolling()) {
+            log.warn("Latest wins needs \"Follow SAST scan status from the controller\" in the global configuration, " +
+                    "queued scans of older builds are not canceled.");
+        }
+        ScanSupersession.Ticket ticket = sharedPolling && isSupersedeQueuedScans() ? ScanSupersession.start(
+                SourceDigestStore.keyOf(config.getUrl(), config.getTeamPath(), config.getProjectName()), run) : null;
+        try {
+            if (ticket != null) {
+                supersedeOlderScans(ticket, config);
+            }
+            CxInFlightScanAction interrupted = sharedPolling ? findInterruptedScan(run, config) : null;
+            CxInFlightScanAction inFlight = null;
+            RemoteScanInfo scanInfo;
+            if (interrupted != null) {
+                log.info("Reattaching to scan " + interrupted.getScanId() + ", submitted by an interrupted build.");
+                inFlight = recordInFlightScan(run, interrupted.getScanId(), config);
+                scanInfo = new RemoteScanInfo();
+                scanInfo.setSubmittedScanId(interrupted.getScanId());
+                scanInfo = waitForSubmittedScan(workspace, action, config, scanInfo, ticket);
+            } else if (ticket != null && ticket.getSupersededBy() != null) {
+                scanInfo = null;
+            } else {
+                //create scans and retrieve results (in jenkins agent)
+                scanInfo = workspace.act(action);
+                recordScanAdmission(workspace, scanInfo);
+            }
+            if (deferred && scanInfo.getSubmittedScanId() > 0) {
+                run.addAction(new CxPendingScanAction(withoutCredentials(), scanInfo.getSubmittedScanId(), config.getProjectName()));
+                log.info("Scan " + scanInfo.getSubmittedScanId() + " submitted. " +
+                        "Results are retrieved and processed by the checkmarxWaitForResults step.");
+                return;
+            }
+            if (sharedPolling && scanInfo != null && scanInfo.getSubmittedScanHandle() != null) {
+                inFlight = recordInFlightScan(run, scanInfo.getSubmittedScanId(), config);
+                scanInfo = waitForSubmittedScan(workspace, action, config, scanInfo, ticket);
+            }
+            if (inFlight != null) {
+                inFlight.setCompleted(true);
+                run.save();
+            }
+            if (scanInfo == null) {
+                log.info("Scan was superseded by " + ticket.getSupersededBy() + ", which scans newer sources of the project. " +
+                        "This build has no scan results.");
+                run.setResult(Result.NOT_BUILT);
+                return;
+            }
+            byte[] snapshot = null;
+            if (flight != null || ((resultCacheKey != null || skipUnscannable) && isCacheable(scanInfo))) {
+                try {
+                    snapshot = ScanResultsTransport.serialize(scanInfo);
+                } catch (IOException e) {
+                    log.warn("Failed to copy the scan results for builds of the same commit: " + e.getMessage());
+                }
+            }
+            if (snapshot != null) {
+                stageWorkspaceReports(workspace, scanInfo, new File(run.getRootDir(), "checkmarx"));
+            }
+            if (flight != null && snapshot != null) {
+                flight.prepare(snapshot);
+            }
+            if (sourceDigestKey != null) {
+                recordSourceDigest(sourceDigestKey, scanInfo);
+            }
+            recordFullScanPolicy(run, config, scanInfo);
+            processScanResults(run, workspace, config, scanInfo);
+            if (resultCacheKey != null && snapshot != null && isCacheable(scanInfo)) {
+                ScanResultCache.put(resultCacheKey, snapshot, new File(run.getRootDir(), "checkmarx"), resultCacheBytes);
+            }
+            if (skipUnscannable && snapshot != null && isCacheable(scanInfo)) {
+                ChangesetScanFilter.recordScannedBuild(run, settingsKey(config, resultFilters), snapshot,
+                        new File(run.getRootDir(), "checkmarx"));
+            }
+        } finally {
+            if (ticket != null) {
+                ticket.close();
+            }
+            if (flight != null) {
+                // Waiting builds copy the workspace reports from the build directory once the flight completes.
+                flight.complete(new File(run.getRootDir(), "checkmarx"));
+            } else {
+                FileUtils.deleteQuietly(new File(run.getRootDir(), "checkmarx/" + ScanResultCache.WORKSPACE_REPORTS_DIR));
+            }
+        }
+			} catch (ConfigurationException e1) {
+				e1.printStackTrace();
+			}
+    }
+
+    /**
+     * Identifies scans that produce the same results: same server, project, commit and scan settings.
+     *
+     * @return the key, null if the commit of the build is not known
+     */
+    private String coalescingKey(EnvVars env, CxScanConfig config, SastResultFilter.Settings resultFilters) {
+        String commit = StringUtils.defaultIfBlank(env.get("GIT_COMMIT"), env.get("SVN_REVISION"));
+        if (StringUtils.isBlank(commit)) {
+            return null;
+        }
+        return LegacyClientSessionCache.sha256(commit + "|" + scanSettings(config, resultFilters));
+    }
+
+    /**
+     * Identifies scans of a job that produce the same results for the same sources.
+     */
+    private String settingsKey(CxScanConfig config, SastResultFilter.Settings resultFilters) {
+        return LegacyClientSessionCache.sha256(scanSettings(config, resultFilters));
+    }
+
+    /**
+     * @return the server, project and scan settings that determine the results, SAST and dependency scan
+     */
+    private String scanSettings(CxScanConfig config, SastResultFilter.Settings resultFilters) {
+        List<String> settings = new ArrayList<>(Arrays.asList(config.getUrl(), config.getTeamPath(),
+                config.getProjectName(), String.valueOf(config.isSastEnabled()), String.valueOf(config.isAstScaEnabled()),
+                String.valueOf(config.isOsaEnabled()), String.valueOf(config.getPresetId()),
+                String.valueOf(config.getEngineConfigurationId()), String.valueOf(config.getIncremental()),
+                config.getSastFilterPattern(), config.getSastFolderExclusions(), getCustomFields(),
+                getProjectLevelCustomFields(), String.valueOf(config.getGeneratePDFReport()),
+                String.valueOf(config.isGenerateScaReport()), config.getScaReportFormat(), resultFilters.getStates(),
+                resultFilters.getSeverities(), resultFilters.getQueries(), resultFilters.getPaths()));
+        DependencyScanConfig dependency = dependencyScanConfig == null ? null
+                : dependencyScanConfig.overrideGlobalConfig ? dependencyScanConfig : getDescriptor().getDependencyScanConfig();
+        if ((config.isAstScaEnabled() || config.isOsaEnabled()) && dependency != null) {
+            settings.addAll(Arrays.asList(config.getOsaFilterPattern(), config.getOsaFolderExclusions(),
+                    dependency.osaArchiveIncludePatterns, String.valueOf(dependency.osaInstallBeforeScan),
+                    dependency.scaServerUrl, dependency.scaTenant, dependency.scaTeamPath, dependency.scaTeamId,
+                    dependency.scaScanCustomTags, dependency.scaProjectCustomTags, String.valueOf(dependency.isIncludeSources),
+                    String.valueOf(dependency.enableScaResolver), dependency.pathToScaResolver,
+                    dependency.overrideGlobalConfig ? dependency.scaResolverAddParameters : dependency.globalScaResolverAddParameters,
+                    dependency.scaConfigFile, dependency.scaEnvVariables, String.valueOf(dependency.isExploitablePath),
+                    dependency.scaSASTProjectFullPath, dependency.scaSASTProjectID));
+        }
+        return String.join("|", settings);
+    }
+
+    /**
+     * Waits for another build that scans the same commit of the project with the same settings, then processes a
+     * copy of its results with the thresholds of this build.
+     *
+     * @return false if the other build did not produce results, this build then scans on its own
+     */
+    private boolean processCoalescedScan(Run<?, ?> run, FilePath workspace, CxScanConfig config,
+                                         ScanCoalescer.Flight flight) throws IOException, InterruptedException {
+        log.info("The same commit of the project is being scanned by " + flight.getLeaderName() + ", waiting for its results.");
+        Integer timeout = config.getSastScanTimeoutInMinutes();
+        RemoteScanInfo scanInfo;
+        ScanCoalescer.Outcome outcome;
+        try {
+            outcome = flight.await(timeout != null ? timeout : 0);
+            scanInfo = outcome != null ? outcome.newScanInfo() : null;
+        } catch (TimeoutException | ExecutionException | ClassNotFoundException e) {
+            log.warn("Failed to get the results of " + flight.getLeaderName() + ", scanning on its own: " + e.getMessage());
+            return false;
+        }
+        if (scanInfo == null) {
+            log.info(flight.getLeaderName() + " did not produce scan results, scanning on its own.");
+            return false;
+        }
+
+        File checkmarxBuildDir = new File(run.getRootDir(), "checkmarx");
+        for (String report : scanInfo.getBuildPageReports()) {
+            File source = new File(outcome.getReportsDir(), report);
+            if (source.exists()) {
+                FileUtils.copyFileToDirectory(source, checkmarxBuildDir);
+            }
+        }
+        File workspaceReports = new File(outcome.getReportsDir(), ScanResultCache.WORKSPACE_REPORTS_DIR);
+        if (workspaceReports.isDirectory()) {
+            FileUtils.copyDirectory(workspaceReports, new File(checkmarxBuildDir, ScanResultCache.WORKSPACE_REPORTS_DIR));
+        }
+        // The reports are already in the build directory, not in the workspace.
+        scanInfo.setBuildPageReports(new ArrayList<>());
+        restoreWorkspaceReports(workspace, checkmarxBuildDir);
+        log.info("Using the results of " + flight.getLeaderName() + ".");
+        processScanResults(run, workspace, config, scanInfo);
+        return true;
+    }
+
+    /**
+     * Processes the cached results of an earlier scan of the same commit of the project with the same settings,
+     * with the thresholds of this build. No scan is run.
+     *
+     * @return false if the results are not cached
+     */
+    private boolean processCachedScan(Run<?, ?> run, FilePath workspace, CxScanConfig config, String key)
+            throws IOException, InterruptedException {
+        File checkmarxBuildDir = new File(run.getRootDir(), "checkmarx");
+        RemoteScanInfo scanInfo = ScanResultCache.get(key, checkmarxBuildDir);
+        if (scanInfo == null) {
+            return false;
+        }
+        // The reports are already in the build directory, not in the workspace.
+        scanInfo.setBuildPageReports(new ArrayList<>());
+        restoreWorkspaceReports(workspace, checkmarxBuildDir);
+        long scanId = scanInfo.getScanResults().getSastResults() != null
+                ? scanInfo.getScanResults().getSastResults().getScanId() : 0;
+        log.info("This commit of the project was already scanned with the same settings" +
+                (scanId > 0 ? " (scan " + scanId + ")" : "") + ", using the cached results.");
+        processScanResults(run, workspace, config, scanInfo);
+        return true;
+    }
+
+    /**
+     * Skips the scan when the SCM changes since the last scanned build of the job contain no sources and no
+     * dependency manifests, and processes the results of that build with the thresholds of this build.
+     *
+     * @return false if the build must scan
+     */
+    private boolean processSkippedScan(Run<?, ?> run, FilePath workspace, CxScanConfig config,
+                                       SastResultFilter.Settings resultFilters) throws IOException, InterruptedException {
+        String reason = ChangesetScanFilter.skipReason(run, config, settingsKey(config, resultFilters));
+        if (reason == null) {
+            return false;
+        }
+        int resultsBuild = ChangesetScanFilter.getLastScannedBuild(run.getParent());
+        File checkmarxBuildDir = new File(run.getRootDir(), "checkmarx");
+        RemoteScanInfo scanInfo = ChangesetScanFilter.carryForward(run.getParent(), checkmarxBuildDir);
+        if (scanInfo == null) {
+            return false;
+        }
+        // The reports are already in the build directory, not in the workspace.
+        scanInfo.setBuildPageReports(new ArrayList<>());
+        restoreWorkspaceReports(workspace, checkmarxBuildDir);
+        log.info("Checkmarx scan skipped since " + reason + ". Using the results of build #" + resultsBuild + ".");
+        run.addAction(new CxScanSkippedAction(reason, resultsBuild));
+        processScanResults(run, workspace, config, scanInfo);
+        return true;
+    }
+
+    /**
+     * Only complete results without errors are cached, a failed scan is run again by the next build.
+     */
+    private static boolean isCacheable(RemoteScanInfo scanInfo) {
+        ScanResults results = scanInfo.getScanResults();
+        if (results == null || results.getGeneralException() != null) {
+            return false;
+        }
+        SASTResults sastResults = results.getSastResults();
+        if (sastResults != null && (sastResults.getException() != null || !sastResults.isSastResultsReady())) {
+            return false;
+        }
+        if (results.getOsaResults() != null && results.getOsaResults().getException() != null) {
+            return false;
+        }
+        return results.getScaResults() == null || results.getScaResults().getException() == null;
+    }
+
+    /**
+     * Saves the submitted scan with the build right away, so a later build can reattach to it.
+     */
+    private CxInFlightScanAction recordInFlightScan(Run<?, ?> run, long scanId, CxScanConfig config) throws IOException {
+        if (scanId <= 0) {
+            return null;
+        }
+        CxInFlightScanAction inFlight = new CxInFlightScanAction(scanId,
+                SourceDigestStore.keyOf(config.getUrl(), config.getTeamPath(), config.getProjectName()));
+        run.addAction(inFlight);
+        run.save();
+        return inFlight;
+    }
+
+    /**
+     * Finds a scan of the same project submitted by the previous build of the job, when that build died before it
+     * collected the results. The scan is only reused when this build has no new SCM changes and the scan did not
+     * fail on the server.
+     */
+    private CxInFlightScanAction findInterruptedScan(Run<?, ?> run, CxScanConfig config) {
+        if (isForceScan()) {
+            return null;
+        }
+        Run<?, ?> previous = run.getPreviousBuild();
+        while (previous != null && previous.isBuilding()) {
+            previous = previous.getPreviousBuild();
+        }
+        if (previous == null) {
+            return null;
+        }
+        String projectKey = SourceDigestStore.keyOf(config.getUrl(), config.getTeamPath(), config.getProjectName());
+        CxInFlightScanAction interrupted = null;
+        for (CxInFlightScanAction candidate : previous.getActions(CxInFlightScanAction.class)) {
+            if (!candidate.isCompleted() && candidate.getProjectKey().equals(projectKey)) {
+                interrupted = candidate;
+            }
+        }
+        if (interrupted == null) {
+            return null;
+        }
+        if (run instanceof RunWithSCM) {
+            for (ChangeLogSet<? extends ChangeLogSet.Entry> changeSet : ((RunWithSCM<?, ?>) run).getChangeSets()) {
+                if (!changeSet.isEmptySet()) {
+                    log.info("Scan " + interrupted.getScanId() + " of an interrupted build does not include the latest changes, starting a new scan.");
+                    return null;
+                }
+            }
+        }
+        try {
+            CxScanStatusClient client = createStatusClient(config);
+            CxScanStatusClient.ScanStatus status;
+            try {
+                status = client.getScanStatus(interrupted.getScanId());
+            } finally {
+                client.close();
+            }
+            if (status.isDone() && !"Finished".equalsIgnoreCase(status.getStage())) {
+                log.info("Scan " + interrupted.getScanId() + " of an interrupted build ended with status "
+                        + status.getStage() + ", starting a new scan.");
+                return null;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read the status of scan " + interrupted.getScanId() + " of an interrupted build: " + e.getMessage());
+            return null;
+        }
+        return interrupted;
+    }
+
+    /**
+     * Lets the agent reuse the last successful scan of the project when the sources did not change.
+     * Only SAST scans with results are considered, other scanners would still need to run.
+     *
+     * @return key of the project in the {@link SourceDigestStore}, null if the check does not apply
+     */
+    private String setSourceDigestCheck(CxScanCallable action, CxScanConfig config) {
+        if (!isSkipUnchangedSources() || isForceScan() || !config.getSynchronous() || !config.isSastEnabled()
+                || config.isAstScaEnabled() || config.isOsaEnabled()) {
+            return null;
+        }
+        String key = SourceDigestStore.keyOf(config.getUrl(), config.getTeamPath(), config.getProjectName());
+        SourceDigestStore.Entry previous = SourceDigestStore.get(key);
+        String settings = config.getPresetId() + "|" + config.getEngineConfigurationId() + "|" + config.getIncremental();
+        action.setSourceDigestCheck(settings, previous != null ? previous.getDigest() : null,
+                previous != null ? previous.getScanId() : 0);
+        return key;
+    }
+
+    private void recordSourceDigest(String key, RemoteScanInfo scanInfo) {
+        SASTResults sastResults = scanInfo.getScanResults() != null ? scanInfo.getScanResults().getSastResults() : null;
+        if (scanInfo.getSourceDigest() != null && scanInfo.getReusedScanId() == 0 && sastResults != null
+                && sastResults.isSastResultsReady() && sastResults.getException() == null && sastResults.getScanId() > 0) {
+            SourceDigestStore.put(key, scanInfo.getSourceDigest(), sastResults.getScanId());
+        }
+    }
+
+    /**
+     * Waits on the controller for the SAST scan submitted by the agent, then collects the results on the agent.
+     * The status is read by the shared {@link ScanStatusPoller}, so waiting builds do not each poll the server.
+     * If the controller cannot follow the scan, the agent waits for it as usual.
+     *
+     * @param ticket "latest wins" ticket of the build, null if the mode is off
+     * @return the results, null if the scan was superseded by a newer build of the project
+     */
+    private RemoteScanInfo waitForSubmittedScan(FilePath workspace, CxScanCallable action, CxScanConfig config,
+                                                RemoteScanInfo submitted, ScanSupersession.Ticket ticket)
+            throws IOException, InterruptedException {
+        long scanId = submitted.getSubmittedScanId();
+        if (ticket != null && !ticket.attachScan(scanId)) {
+            // Superseded while the scan was submitted.
+            if (scanId > 0) {
+                cancelScan(config, scanId, "Superseded by " + ticket.getSupersededBy(), log);
+            }
+            discardSubmittedScan(workspace, submitted);
+            return null;
+        }
+        Integer timeout = config.getSastScanTimeoutInMinutes();
+        if (scanId > 0) {
+            long start = System.currentTimeMillis();
+            ScanStatusPoller.Waiter waiter = ScanStatusPoller.getInstance().await(ScanStatusPoller.keyOf(config),
+                    scanId, () -> createStatusClient(config), status -> log.info("Scan status: " + status));
+            try {
+                CxScanStatusClient.ScanStatus status = timeout != null && timeout > 0
+                        ? waiter.getFuture().get(timeout, TimeUnit.MINUTES) : waiter.getFuture().get();
+                log.info("Scan " + scanId + " ended with status " + status.getStage() + ".");
+            } catch (InterruptedException e) {
+                waiter.cancel();
+                cancelAbortedScan(config, scanId, log);
+                discardSubmittedScan(workspace, submitted);
+                throw e;
+            } catch (TimeoutException e) {
+                cancelScan(config, scanId, "Scan did not finish within " + timeout + " minutes", log);
+                discardSubmittedScan(workspace, submitted);
+                throw new AbortException("Scan " + scanId + " did not finish within " + timeout + " minutes.");
+            } catch (ExecutionException e) {
+                log.warn("Failed to follow the status of scan " + scanId + " from the controller, waiting on the agent: "
+                        + e.getCause().getMessage());
+            } finally {
+                waiter.cancel();
+            }
+            if (ticket != null && ticket.awaitSupersededBy() != null && !isScanFinished(config, scanId)) {
+                discardSubmittedScan(workspace, submitted);
+                return null;
+            }
+            // The agent applies whatever is left of the timeout.
+            if (timeout != null && timeout > 0) {
+                long elapsed = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - start);
+                config.setSastScanTimeoutInMinutes((int) Math.max(1, timeout - elapsed));
+            }
+        }
+
+        action.setSubmitOnly(false);
+        action.setKeepSubmittedScan(false);
+        action.setSubmittedScanHandle(submitted.getSubmittedScanHandle());
+        // Used when the agent no longer keeps the submitted scan.
+        action.setPendingScanId(scanId);
+        try {
+            return workspace.act(action);
+        } finally {
+            config.setSastScanTimeoutInMinutes(timeout);
+        }
+    }
+
+    /**
+     * Drops the submitted scan kept on the agent when its results will not be collected. Does not wait for the
+     * agent, the build may have been aborted.
+     */
+    private void discardSubmittedScan(FilePath workspace, RemoteScanInfo submitted) {
+        if (submitted.getSubmittedScanHandle() == null) {
+            return;
+        }
+        boolean interrupted = Thread.interrupted();
+        try {
+            workspace.actAsync(new CxScanCallable.DiscardSubmittedScan(submitted.getSubmittedScanHandle()));
+        } catch (IOException | InterruptedException e) {
+            log.warn("Failed to discard the submitted scan kept on the agent: " + e.getMessage());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Retrieves and processes the results of a scan submitted with deferred results, see {@link CxPendingScanAction}.
+     * Runs on the controller without a workspace, so reports are only written to the build directory.
+     */
+    void processDeferredScan(Run<?, ?> run, TaskListener listener, CxScanConfig config, CxPendingScanAction pending)
+            throws IOException, InterruptedException {
+        log = createLogger(listener);
+        CxScanCallable action = createScanCallable(config, listener, Collections.emptyMap());
+        setReportOptions(action, run, config, getDescriptor());
+        action.setResultFilter(SastResultFilter.of(getResultFilterSettings()));
+        action.setPendingScanId(pending.getScanId());
+
+        File resultsDir = new File(run.getRootDir(), "checkmarx-results");
+        try {
+            FilePath resultsPath = new FilePath(resultsDir);
+            resultsPath.mkdirs();
+            RemoteScanInfo scanInfo = resultsPath.act(action);
+            // Once processing starts, e.g. a threshold fails the build, a later wait must not pick the results up again.
+            pending.markProcessed(run);
+            processScanResults(run, resultsPath, config, scanInfo);
+        } finally {
+            FileUtils.deleteQuietly(resultsDir);
+        }
+    }
+
+    /**
+     * Resolves the configuration of this step for a build whose results are processed on the controller.
+     */
+    CxScanConfig resolveDeferredConfiguration(Run<?, ?> run, TaskListener listener) throws IOException, InterruptedException {
+        EnvVars env = run.getEnvironment(listener);
+        try {
+            return resolveConfiguration(run, getDescriptor(), env, createLogger(listener), null);
+        } catch (ConfigurationException e) {
+            throw new AbortException("Failed to resolve Checkmarx configuration: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cancels the scan of an aborted build on the server, so it does not keep an engine busy.
+     */
+    void cancelAbortedScan(CxScanConfig config, long scanId, CxLoggerAdapter logger) {
+        cancelScan(config, scanId, "Build aborted", logger);
+    }
+
+    /**
+     * Cancels a scan on the server. Waits at most {@value #CANCEL_GRACE_SECONDS} seconds for the server, the
+     * interrupt status of the caller is preserved.
+     *
+     * @param reason why the scan is canceled, starts the console messages
+     * @return whether the server confirmed the cancellation
+     */
+    private boolean cancelScan(CxScanConfig config, long scanId, String reason, CxLoggerAdapter logger) {
+        Future<?> cancel = Computer.threadPoolForRemoting.submit(() -> {
+            CxScanStatusClient client = createStatusClient(config);
+            try {
+                client.cancelScan(scanId);
+            } finally {
+                client.close();
+            }
+            return null;
+        });
+        boolean interrupted = Thread.interrupted();
+        try {
+            cancel.get(CANCEL_GRACE_SECONDS, TimeUnit.SECONDS);
+            logger.info(reason + ", scan " + scanId + " was canceled on the server.");
+            return true;
+        } catch (TimeoutException e) {
+            cancel.cancel(true);
+            logger.warn(reason + ", scan " + scanId + " was not canceled within " + CANCEL_GRACE_SECONDS + " seconds.");
+        } catch (ExecutionException e) {
+            logger.warn(reason + ", failed to cancel scan " + scanId + ": " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cancels the scans of older builds of the same project that are still queued on the server, their sources
+     * are older than the ones this build scans. Those builds end without results, older builds that have not
+     * submitted their scan yet skip it.
+     */
+    private void supersedeOlderScans(ScanSupersession.Ticket ticket, CxScanConfig config) {
+        for (ScanSupersession.Ticket older : ticket.getOlder()) {
+            if (older.supersedeUnsubmitted(ticket.getBuildName())) {
+                log.info(older.getBuildName() + " has not submitted its scan yet, it skips the scan.");
+                continue;
+            }
+            long scanId = older.getScanId();
+            if (scanId <= 0) {
+                continue;
+            }
+            try {
+                CxScanStatusClient client = createStatusClient(config);
+                CxScanStatusClient.ScanStatus status;
+                try {
+                    status = client.getScanStatus(scanId);
+                } finally {
+                    client.close();
+                }
+                if (!status.isQueued()) {
+                    continue;
+                }
+            } catch (Exception e) {
+                log.warn("Failed to read the status of scan " + scanId + " of " + older.getBuildName() + ": " + e.getMessage());
+                continue;
+            }
+            // The older build waits for the outcome, it may see the canceled scan before the cancel call returns.
+            if (!older.beginCancel()) {
+                continue;
+            }
+            boolean canceled = false;
+            try {
+                canceled = cancelScan(config, scanId, "Superseded queued scan of " + older.getBuildName(), log);
+            } finally {
+                older.endCancel(canceled ? ticket.getBuildName() : null);
+            }
+        }
+    }
+
+    /**
+     * Re-reads the status of a scan, a superseded build still collects the results of a scan that finished
+     * before it was canceled.
+     */
+    private boolean isScanFinished(CxScanConfig config, long scanId) {
+        try {
+            CxScanStatusClient client = createStatusClient(config);
+            try {
+                return "Finished".equalsIgnoreCase(client.getScanStatus(scanId).getStage());
+            } finally {
+                client.close();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read the status of scan " + scanId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Creates a logged in client that reads the status of the scans submitted by this step.
+     */
+    CxScanStatusClient createStatusClient(CxScanConfig config) throws IOException, CxClientException {
+        Jenkins instance = Jenkins.getInstance();
+        if (instance != null && instance.proxy != null &&
+                !isCxURLinNoProxyHost(useOwnServerCredentials ? this.serverUrl : getDescriptor().getServerUrl(), instance.proxy.getNoProxyHostPatterns())) {
+            config.setProxyConfig(ProxyHelper.getProxyConfig());
+        }
+        CxScanStatusClient client = CommonClientFactory.getStatusClient(config, serverLog);
+        client.login();
+        return client;
+    }
+
+    private CxLoggerAdapter createLogger(TaskListener listener) {
+        CxLoggerAdapter logger = new CxLoggerAdapter(listener.getLogger());
+        logger.setDebugEnabled(!isHideDebugLogs());
+        logger.setTraceEnabled(!isHideDebugLogs());
+        return logger;
+    }
+
+    private CxScanCallable createScanCallable(CxScanConfig config, TaskListener listener, Map<String, String> fsaVars) {
         Jenkins instance = Jenkins.getInstance();
-        final CxScanCallable action;
         if (instance != null && instance.proxy != null &&
                 ((!isCxURLinNoProxyHost(useOwnServerCredentials ? this.serverUrl : getDescriptor().getServerUrl(), instance.proxy.getNoProxyHostPatterns()))
                         || (config.isScaProxy()))) {
-            action = new CxScanCallable(config, listener, instance.proxy, isHideDebugLogs(), fsaVars);
-        } else {
-            action = new CxScanCallable(config, listener, isHideDebugLogs(), fsaVars);
-        }      
-        
+            return new CxScanCallable(config, listener, instance.proxy, isHideDebugLogs(), fsaVars);
+        }
+        return new CxScanCallable(config, listener, isHideDebugLogs(), fsaVars);
+    }
+
+    private void setReportOptions(CxScanCallable action, Run<?, ?> run, CxScanConfig config, DescriptorImpl descriptor)
+            throws MalformedURLException {
+        String sastPdfLink = config.getGeneratePDFReport() || isPdfReportDeferred(config)
+                ? getBuildPageUrl(run, PDF_URL, PDF_URL_TEMPLATE) : null;
+        String scaPdfLink = config.isGenerateScaReport() && "pdf".equalsIgnoreCase(config.getScaReportFormat())
+                ? getBuildPageUrl(run, SCA_PDF_URL, SCA_PDF_URL_TEMPLATE) : null;
+        action.setReportOptions(sastPdfLink, scaPdfLink, descriptor.isAsyncHtmlRemoval());
+        action.setJsonReportFormat(descriptor.getJsonReportFormat());
+    }
+
+    /**
+     * The report is only deferred when it can be generated without the username and password of this step, those
+     * are not saved with the build.
+     */
+    private boolean isPdfReportDeferred(CxScanConfig config) {
+        return generatePdfReport && deferPdfReport && config.isSastEnabled() && config.getSynchronous()
+                && usesStoredCredentials();
+    }
+
+    /**
+     * @return whether the server credentials are resolved from a credentials id or the global configuration,
+     * rather than from a username and password of this step
+     */
+    private boolean usesStoredCredentials() {
+        return !useOwnServerCredentials || StringUtils.isNotEmpty(credentialsId);
+    }
+
+    /**
+     * @return a copy of this step without its username and password, saved with builds that process their results
+     * later. The copy resolves its credentials again from the credentials id or the global configuration.
+     */
+    private CxScanBuilder withoutCredentials() {
+        CxScanBuilder copy = (CxScanBuilder) Jenkins.XSTREAM2.fromXML(Jenkins.XSTREAM2.toXML(this));
+        copy.username = null;
+        copy.password = null;
+        return copy;
+    }
 
-        //create scans and retrieve results (in jenkins agent)
-        RemoteScanInfo scanInfo = workspace.act(action);
+    private DeferredPdfReport createDeferredPdfReport(CxScanConfig config, long scanId) {
+        Jenkins instance = Jenkins.getInstance();
+        String url = useOwnServerCredentials ? this.serverUrl : getDescriptor().getServerUrl();
+        boolean proxy = instance != null && instance.proxy != null
+                && !isCxURLinNoProxyHost(url, instance.proxy.getNoProxyHostPatterns());
+        String effectiveCredentialsId = useOwnServerCredentials ? credentialsId : getDescriptor().getCredentialsId();
+        return new DeferredPdfReport(config.getUrl(), StringUtils.defaultIfEmpty(effectiveCredentialsId, null),
+                proxy, scanId);
+    }
+
+    private void processScanResults(Run<?, ?> run, FilePath workspace, CxScanConfig config, RemoteScanInfo scanInfo)
+            throws IOException, InterruptedException {
+        boolean packed = scanInfo.isPacked();
+        long readStart = System.currentTimeMillis();
         ScanResults scanResults = scanInfo.getScanResults();
+        if (packed) {
+            log.info("Scan results received from the agent read in " + (System.currentTimeMillis() - readStart) + " ms.");
+        }
         //setting cxVersion in config if it is null (Jenkins agent node scenario). We need this for HTML report.
         if(config.getCxVersion() == null){
         	CxVersion cxVersion = new CxVersion();
@@ -1072,117 +1902,43 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         File checkmarxBuildDir = new File(run.getRootDir(), "checkmarx");
         checkmarxBuildDir.mkdir();
 
-        if (config.getGeneratePDFReport()) {
-            String path = "";
-            // run.getUrl() returns a URL path similar to job/MyJobName/124/
-            //getRootUrl() will return the value of "Manage Jenkins->configuration->Jenkins URL"
-            String baseUrl = Jenkins.getInstance().getRootUrl();
-            if (StringUtils.isNotEmpty(baseUrl)) {
-                URL parsedUrl = new URL(baseUrl);
-                path = parsedUrl.getPath();
-            }
-            if (!(path.equals("/"))) {
-                //to handle this Jenkins root url,EX: http://localhost:8081/jenkins
-                Path pdfUrlPath = Paths.get(path, run.getUrl(), PDF_URL);
-                scanResults.getSastResults().setSastPDFLink(pdfUrlPath.toString());
-            } else {
-                //to handle this Jenkins root url,EX: http://localhost:8081/
-                String pdfUrl = String.format(PDF_URL_TEMPLATE, run.getUrl());
-                scanResults.getSastResults().setSastPDFLink(pdfUrl);
-            }
-        }
-        
-        if (config.isGenerateScaReport()) {
-        	if(config.getScaReportFormat() != null && "pdf".equalsIgnoreCase(config.getScaReportFormat())) {
-            String path = "";
-            // run.getUrl() returns a URL path similar to job/MyJobName/124/
-            //getRootUrl() will return the value of "Manage Jenkins->configuration->Jenkins URL"
-            String baseUrl = Jenkins.getInstance().getRootUrl();
-            if (StringUtils.isNotEmpty(baseUrl)) {
-                URL parsedUrl = new URL(baseUrl);
-                path = parsedUrl.getPath();
-            }
-            if (!(path.equals("/"))) {
-                //to handle this Jenkins root url,EX: http://localhost:8081/jenkins
-                Path pdfUrlPath = Paths.get(path, run.getUrl(), SCA_PDF_URL);
-                scanResults.getScaResults().setScaPDFLink(pdfUrlPath.toString());
-            } else {
-                //to handle this Jenkins root url,EX: http://localhost:8081/
-                String pdfUrl = String.format(SCA_PDF_URL_TEMPLATE, run.getUrl());
-                scanResults.getScaResults().setScaPDFLink(pdfUrl);
-            }
-        	}
-        }
-
         //in case of async mode, do not create reports (only the report of the latest scan)
         //and don't assert threshold vulnerabilities
         
          failTheBuild(run, config, scanResults);
+
+        //reports were written to the workspace on the scanning node, copy the ones shown on the build page
+        copyReportsToBuildDir(workspace, scanInfo, checkmarxBuildDir);
+        cxScanResult.setHtmlReportName(scanInfo.getHtmlReportName());
+
         if (config.getSynchronous()) {
-        	//generate html report
-            String reportName = generateHTMLReport(workspace, checkmarxBuildDir, config, scanResults);
-            cxScanResult.setHtmlReportName(reportName);
             run.addAction(cxScanResult);
-            
-
 
-            //create sast reports
             SASTResults sastResults = scanResults.getSastResults();
             if (sastResults != null && sastResults.isSastResultsReady()) {
-                if (config.getGenerateXmlReport() == null || config.getGenerateXmlReport()) {
-                    createSastReports(sastResults, checkmarxBuildDir, workspace);
-                }
                 addEnvVarAction(run, sastResults);
                 cxScanResult.setSastResults(sastResults);
+                if (isPdfReportDeferred(config) && sastResults.getScanId() > 0) {
+                    cxScanResult.setDeferredPdfReport(createDeferredPdfReport(config, sastResults.getScanId()));
+                }
+                CxTrendIndex.record(run, sastResults.getCritical(), sastResults.getHigh(),
+                        sastResults.getMedium(), sastResults.getLow());
             }
 
-            //create osa reports
+            //dependency scan reports were written on the scanning node
             OSAResults osaResults = scanResults.getOsaResults();
             AstScaResults scaResults = scanResults.getScaResults();
-            if (osaResults != null && osaResults.isOsaResultsReady()) {
-                createOsaReports(osaResults, workspace);
-            } else if (scaResults != null && scaResults.isScaResultReady()) {
-                createScaReports(scaResults, config, checkmarxBuildDir, workspace);
+            if ((osaResults == null || !osaResults.isOsaResultsReady()) && scaResults != null && scaResults.isScaResultReady()) {
+                setScaPdfLink(scaResults, config, checkmarxBuildDir);
             }
             return;
         }
 
-		/* For asynchronous scan, if reports are not ready or report of previous successful scan is not
-		 found, HTML Report is not generated*/
-		boolean generateAsyncReport = false;
-		SASTResults sastResults = scanResults.getSastResults();
-		OSAResults osaResults = scanResults.getOsaResults();
-		AstScaResults scaResults = scanResults.getScaResults();
-		if (config.isSastEnabled() && sastResults != null && sastResults.isSastResultsReady()) {
-			generateAsyncReport = true;
-		}
-		
-		/*If a combination scan is run(SAST + OSA/SCA), 
-		HTML report is generated only if, previous reports are available for both the scans*/
-		if (config.isOsaEnabled() || config.isAstScaEnabled()) {
-			if ((config.isOsaEnabled() && (osaResults == null || !osaResults.isOsaResultsReady()))
-					|| (config.isAstScaEnabled() && (scaResults == null || !scaResults.isScaResultReady()))
-					|| (config.isSastEnabled() && (sastResults == null || !sastResults.isSastResultsReady()))) {
-				generateAsyncReport = false;
-			} else {
-				generateAsyncReport = true;
-			}
-		}
-
-		if (!descriptor.isAsyncHtmlRemoval() && !config.getSynchronous()) {
-		    if (generateAsyncReport) {
-		        String reportName = generateHTMLReport(workspace, checkmarxBuildDir, config, scanResults);
-		        cxScanResult.setHtmlReportName(reportName);
-		    }
-		}
-
         run.addAction(cxScanResult);
-			} catch (ConfigurationException e1) {
-				e1.printStackTrace();
-			}
     }
 
-    private void overrideConfigAsCode(CxScanConfig config, FilePath workspace) throws ConfigurationException {
+    private void overrideConfigAsCode(CxScanConfig config, SastResultFilter.Settings resultFilters, FilePath workspace)
+            throws ConfigurationException {
         FilePath configFile = workspace.child(".checkmarx").child(CONFIG_AS_CODE_FILE_NAME);
         String configFilePath = configFile.getRemote();
         com.checkmarx.configprovider.readers.FileReader reader =
@@ -1190,11 +1946,36 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
         ConfigAsCode configAsCode = getConfigAsCode(reader);
         overrideConfigAsCode(configAsCode, config);
+        overrideResultFilters(resultFilters);
+    }
+
+    private void overrideResultFilters(SastResultFilter.Settings resultFilters) {
+        ConfigProvider configProvider = ConfigProvider.getInstance();
+        if (!configProvider.hasConfiguration(CX_ORIGIN, "resultFilters")) {
+            return;
+        }
+        SastResultFilter.Settings fromFile =
+                configProvider.getConfiguration(CX_ORIGIN, "resultFilters", SastResultFilter.Settings.class);
+        if (fromFile.getStates() != null) {
+            resultFilters.setStates(fromFile.getStates());
+            log.info("Result filter states overridden using config as code file: " + fromFile.getStates());
+        }
+        if (fromFile.getSeverities() != null) {
+            resultFilters.setSeverities(fromFile.getSeverities());
+            log.info("Result filter severities overridden using config as code file: " + fromFile.getSeverities());
+        }
+        if (fromFile.getQueries() != null) {
+            resultFilters.setQueries(fromFile.getQueries());
+            log.info("Result filter queries overridden using config as code file: " + fromFile.getQueries());
+        }
+        if (fromFile.getPaths() != null) {
+            resultFilters.setPaths(fromFile.getPaths());
+            log.info("Result filter paths overridden using config as code file: " + fromFile.getPaths());
+        }
     }
 
     private ConfigAsCode getConfigAsCode(ConfigReader reader) throws ConfigurationException {
         ConfigProvider configProvider = ConfigProvider.getInstance();
-        String CX_ORIGIN = "jenkins";
 
         configProvider.init(CX_ORIGIN, reader);
 
@@ -1448,23 +2229,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     }
 
 
-	private void createScaReports(AstScaResults scaResults, CxScanConfig config, File checkmarxBuildDir,
-			FilePath workspace) {
-
-		writeJsonObjectToFile(scaResults.getSummary(), workspace, SCA_SUMMERY_JSON);
-		writeJsonObjectToFile(scaResults.getPackages(), workspace, SCA_LIBRARIES_JSON);
-		writeJsonObjectToFile(scaResults.getFindings(), workspace, SCA_VULNERABILITIES_JSON);
-		if (config.isGenerateScaReport()) {
-			if (scaResults.getPDFReport() != null && "pdf".equalsIgnoreCase(config.getScaReportFormat())) {
-				File pdfReportFile = new File(checkmarxBuildDir, CxScanResult.SCA_PDF_REPORT_NAME);
-				try {
-					FileUtils.writeByteArrayToFile(pdfReportFile, scaResults.getPDFReport());
-					// Use platform-independent path construction
-					scaResults.setScaPDFLink(new File(checkmarxBuildDir, CxScanResult.SCA_PDF_REPORT_NAME).getPath());
-					log.info("PDF Report generated at location: " + pdfReportFile.getAbsolutePath());
-				} catch (IOException e) {
-					log.warn("Failed to write SCA PDF report to workspace: " + e.getMessage());
-				}
+	private void setScaPdfLink(AstScaResults scaResults, CxScanConfig config, File checkmarxBuildDir) {
+		if (config.isGenerateScaReport() && "pdf".equalsIgnoreCase(config.getScaReportFormat())) {
+			File pdfReportFile = new File(checkmarxBuildDir, CxScanResult.SCA_PDF_REPORT_NAME);
+			if (pdfReportFile.exists()) {
+				// Use platform-independent path construction
+				scaResults.setScaPDFLink(pdfReportFile.getPath());
+				log.info("PDF Report generated at location: " + pdfReportFile.getAbsolutePath());
 			}
 		}
 	}
@@ -1502,7 +2273,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return false;
     }
 
-    private String getJenkinURLForTheJob(EnvVars env) {
+    private String getJenkinURLForTheJob(EnvVars env, CxLoggerAdapter log) {
         String passedURL = "";
         try {
             String jobName = env.get("JOB_NAME");
@@ -1569,7 +2340,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         }
         String originUrl = getCxOriginUrl(env, log);
         ret.setCxOriginUrl(originUrl);
-        String jenkinURL = getJenkinURLForTheJob(env);
+        String jenkinURL = getJenkinURLForTheJob(env, log);
 
         //general
         ret.setCxOrigin(jenkinURL);
@@ -1702,8 +2473,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             }
 
             ret.setScanComment(env.expand(comment));
-            ret.setIncremental(isThisBuildIncremental(run.getNumber()));
-            ret.setGeneratePDFReport(generatePdfReport);
+            ret.setIncremental(isThisBuildIncremental(run, log));
+            // A deferred report is generated when it is first opened, not during the scan.
+            ret.setGeneratePDFReport(generatePdfReport && !deferPdfReport);
 
             if (StringUtils.isNotBlank(sourceEncoding)) {
                 String trimmedEncoding = sourceEncoding.trim();
@@ -1775,7 +2547,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             setDependencyScanConfig(config);
         }
 
-        configureDependencyScan(run, descriptor, env, ret, workspace);
+        configureDependencyScan(run, descriptor, env, ret, workspace, log);
 
         if (!ret.getSynchronous()) {
             enableProjectPolicyEnforcement = false;
@@ -1816,19 +2588,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     }
 
     private String getTeamNameFromId(CxConnectionDetails credentials, DescriptorImpl descriptor, String teamId, CxScanConfig scanConfig) {
-        LegacyClient commonClient = null;
         String teamName = null;
         try {
-
-            commonClient = prepareLoggedInClient(credentials, descriptor, scanConfig);
-            teamName = commonClient.getTeamNameById(teamId);
-
+            resolveClientProxy(credentials, descriptor, scanConfig);
+            teamName = descriptor.getTeamPath(credentials, teamId,
+                    () -> prepareLoggedInClient(credentials, descriptor, scanConfig));
         } catch (Exception e) {
             serverLog.error("Failed to get team name by team id: " + e.toString());
-        } finally {
-            if (commonClient != null) {
-                commonClient.close();
-            }
         }
         return teamName;
     }
@@ -1840,7 +2606,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
      */
     private LegacyClient prepareLoggedInClient(CxConnectionDetails credentials, DescriptorImpl descriptor, CxScanConfig scanConfig)
             throws IOException, CxClientException {
-        LegacyClient ret;
+        resolveClientProxy(credentials, descriptor, scanConfig);
+        LegacyClient ret = CommonClientFactory.getInstance(credentials, descriptor.isEnableCertificateValidation(), serverLog);
+        ret.login();
+        return ret;
+    }
+
+    private void resolveClientProxy(CxConnectionDetails credentials, DescriptorImpl descriptor, CxScanConfig scanConfig) {
         Jenkins instance = Jenkins.getInstance();
 
         if (credentials.isProxy()) {
@@ -1857,19 +2629,15 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                     }
                 }
             }
-            ret = CommonClientFactory.getInstance(credentials, descriptor.isEnableCertificateValidation(), serverLog);
         } else {
             credentials.setProxy(false);
             credentials.setScaProxy(false);
-            ret = CommonClientFactory.getInstance(credentials, descriptor.isEnableCertificateValidation(), serverLog);
         }
-
-        ret.login();
-        return ret;
     }
 
 
-    private void configureDependencyScan(Run<?, ?> run, DescriptorImpl descriptor, EnvVars env, CxScanConfig config, FilePath workspace) {
+    private void configureDependencyScan(Run<?, ?> run, DescriptorImpl descriptor, EnvVars env, CxScanConfig config,
+                                         FilePath workspace, CxLoggerAdapter log) {
         boolean dependencyScanEnabled = dependencyScanConfig != null;
         if (!dependencyScanEnabled) {
             return;
@@ -1926,12 +2694,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             config.setOsaArchiveIncludePatterns(effectiveConfig.osaArchiveIncludePatterns.trim());
             config.setOsaRunInstall(effectiveConfig.osaInstallBeforeScan);
         } else if (config.isAstScaEnabled()) {
-            config.setAstScaConfig(getScaConfig(run, env, dependencyScanConfig, descriptor, workspace, config));
+            config.setAstScaConfig(getScaConfig(run, env, dependencyScanConfig, descriptor, workspace, config, log));
             config.setSCAScanTimeoutInMinutes(dependencyScanConfig.scaTimeout);
         }
     }
 
-    private AstScaConfig getScaConfig(Run<?, ?> run, EnvVars env, DependencyScanConfig dsConfigJobLevel, DescriptorImpl descriptor, FilePath workspace, CxScanConfig config) {
+    private AstScaConfig getScaConfig(Run<?, ?> run, EnvVars env, DependencyScanConfig dsConfigJobLevel, DescriptorImpl descriptor,
+                                      FilePath workspace, CxScanConfig config, CxLoggerAdapter log) {
 
 
         DependencyScanConfig dsConfig;
@@ -2148,76 +2917,6 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return noProxyHost;
     }
 
-    private void createSastReports(SASTResults sastResults, File checkmarxBuildDir, @Nonnull FilePath workspace) {
-        File xmlReportFile = new File(checkmarxBuildDir, SCAN_REPORT_XML);
-        try {
-            FileUtils.writeByteArrayToFile(xmlReportFile, sastResults.getRawXMLReport());
-            writeFileToWorkspaceReports(workspace, xmlReportFile);
-        } catch (IOException e) {
-            log.warn("Failed to write SAST XML report to workspace: " + e.getMessage());
-        }
-
-        if (sastResults.getPDFReport() != null) {
-            File pdfReportFile = new File(checkmarxBuildDir, CxScanResult.PDF_REPORT_NAME);
-            try {
-                FileUtils.writeByteArrayToFile(pdfReportFile, sastResults.getPDFReport());
-            } catch (IOException e) {
-                log.warn("Failed to write SAST PDF report to workspace: " + e.getMessage());
-            }
-        }
-    }
-
-    private void createOsaReports(OSAResults osaResults, FilePath checkmarxBuildDir) {
-        writeJsonObjectToFile(osaResults.getResults(), checkmarxBuildDir, OSA_SUMMERY_JSON);
-        writeJsonObjectToFile(osaResults.getOsaLibraries(), checkmarxBuildDir, OSA_LIBRARIES_JSON);
-        writeJsonObjectToFile(osaResults.getOsaVulnerabilities(), checkmarxBuildDir, OSA_VULNERABILITIES_JSON);
-    }
-
-    private String generateHTMLReport(@Nonnull FilePath workspace, File checkmarxBuildDir, CxScanConfig config, ScanResults results) {
-        String reportName = null;
-        try {
-            String reportHTML = SummaryUtils.generateSummary(results.getSastResults(), results.getOsaResults(), results.getScaResults(), config);
-            reportName = CxScanResult.resolveHTMLReportName(config.isSastEnabled(), getDependencyScannerType(config));
-            File reportFile = new File(checkmarxBuildDir, reportName);
-            FileUtils.writeStringToFile(reportFile, reportHTML, Charset.defaultCharset());
-            writeFileToWorkspaceReports(workspace, reportFile);
-        } catch (IOException | TemplateException e) {
-            log.error("Failed to generate HTML report. {}", e.getMessage());
-        } catch (NullPointerException e) {
-            String message = "";
-            if (results.getSastResults() != null && !results.getSastResults().isSastResultsReady()) {
-                message = "SAST results are empty.";
-            } else if (results.getOsaResults() != null && !results.getOsaResults().isOsaResultsReady()) {
-                message = "OSA results are empty.";
-            } else if (results.getScaResults() != null && !results.getScaResults().isScaResultReady()) {
-                message = "SCA results are empty.";
-            }
-            log.error("Failed to generate HTML report. {}", message);
-        }
-        return reportName;
-    }
-
-    private void writeJsonObjectToFile(Object jsonObj, FilePath to, String fileName) {
-        InputStream is = null;
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            String json = null;
-            json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObj);
-            is = IOUtils.toInputStream(json, StandardCharsets.UTF_8);
-
-            FilePath reportsDir = to.child("Checkmarx").child("Reports");
-            FilePath remoteFile = reportsDir.child(fileName);
-            
-            log.info("Copying file {} to workspace {}", fileName, remoteFile.getRemote());
-            remoteFile.copyFrom(is);
-            log.info("File {} successfully written to workspace", fileName);
-        } catch (Exception e) {
-            log.error("Failed to write '" + fileName + "' to [" + to.getRemote() + "]", e);
-        } finally {
-            IOUtils.closeQuietly(is);
-        }
-    }
-    
     private void showWarningForFailTheBuildOnNewCriticalVulnerabilities(CxScanConfig config){
     	String msg = "Critical severity is not supported for the version of the configured SAST server. Thus, fail the build functionality for new critical vulnerabilities will not work if critical severity is not supported by the configured SAST server.";
     	if(config.getSastNewResultsThresholdEnabled() 
@@ -2333,26 +3032,6 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return ret;
     }
 
-    private void writeFileToWorkspaceReports(FilePath workspace, File file) {
-        FileInputStream fis = null;
-
-        try {
-            FilePath reportsDir = workspace.child("Checkmarx").child("Reports");
-            FilePath remoteFile = reportsDir.child(file.getName());
-            
-            log.info("Copying file {} to workspace {}", file.getName(), remoteFile.getRemote());
-            fis = new FileInputStream(file);
-            remoteFile.copyFrom(fis);
-
-        } catch (Exception e) {
-            log.warn("Failed to write file [" + file.getName() + "] to workspace: " + e.getMessage());
-
-        } finally {
-            IOUtils.closeQuietly(fis);
-        }
-
-    }
-
     private boolean shouldUseGlobalThreshold() {
         final DescriptorImpl descriptor = getDescriptor();
         //locked by global or (job threshold enabled and points to 'global' and global is enabled)
@@ -2399,7 +3078,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return descriptor.getContinueBuildWhenTimedOut();
     }
 
-    private boolean isThisBuildIncremental(int buildNumber) {
+    private boolean isThisBuildIncremental(Run<?, ?> run, CxLoggerAdapter log) {
 
         boolean askedForIncremental = isIncremental();
         if (!askedForIncremental) {
@@ -2411,17 +3090,106 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             return true;
         }
 
-        // if user entered invalid value for full scan cycle - all scans will be incremental
-        if (fullScanCycle < DescriptorImpl.FULL_SCAN_CYCLE_MIN || fullScanCycle > DescriptorImpl.FULL_SCAN_CYCLE_MAX) {
-            return true;
+        // if user entered invalid value for full scan cycle - the number of incremental scans is not limited
+        boolean validCycle = fullScanCycle >= DescriptorImpl.FULL_SCAN_CYCLE_MIN && fullScanCycle <= DescriptorImpl.FULL_SCAN_CYCLE_MAX;
+        FullScanPolicy policy = new FullScanPolicy(validCycle ? fullScanCycle : 0,
+                Math.max(0, fullScanChangedFiles), Math.max(0, fullScanIntervalDays));
+        String reason = policy.fullScanReason(run);
+        if (reason != null) {
+            log.info("Running a full scan: " + reason + ".");
+        }
+        return reason == null;
+    }
+
+    /**
+     * Counts a submitted SAST scan in the state used to schedule the full scans of the job.
+     */
+    private void recordFullScanPolicy(Run<?, ?> run, CxScanConfig config, RemoteScanInfo scanInfo) {
+        if (!config.isSastEnabled() || !isIncremental() || !isFullScansScheduled() || scanInfo.getReusedScanId() != 0) {
+            return;
+        }
+        SASTResults sastResults = scanInfo.getScanResults() != null ? scanInfo.getScanResults().getSastResults() : null;
+        if (sastResults != null && sastResults.getException() == null && sastResults.getScanId() > 0) {
+            FullScanPolicy.recordScan(run.getParent(), !config.getIncremental());
+        }
+    }
+
+    private String getBuildPageUrl(Run<?, ?> run, String relativeUrl, String urlTemplate) throws MalformedURLException {
+        String path = "";
+        // run.getUrl() returns a URL path similar to job/MyJobName/124/
+        //getRootUrl() will return the value of "Manage Jenkins->configuration->Jenkins URL"
+        String baseUrl = Jenkins.getInstance().getRootUrl();
+        if (StringUtils.isNotEmpty(baseUrl)) {
+            URL parsedUrl = new URL(baseUrl);
+            path = parsedUrl.getPath();
+        }
+        if (!(path.equals("/"))) {
+            //to handle this Jenkins root url,EX: http://localhost:8081/jenkins
+            return Paths.get(path, run.getUrl(), relativeUrl).toString();
+        }
+        //to handle this Jenkins root url,EX: http://localhost:8081/
+        return String.format(urlTemplate, run.getUrl());
+    }
+
+    /**
+     * Copies the reports shown on the build page from the workspace reports folder to the build directory.
+     * For remote workspaces the files are streamed as a compressed archive.
+     */
+    private void copyReportsToBuildDir(FilePath workspace, RemoteScanInfo scanInfo, File checkmarxBuildDir) throws InterruptedException {
+        List<String> reports = scanInfo.getBuildPageReports();
+        if (reports == null || reports.isEmpty()) {
+            return;
+        }
+        try {
+            FilePath reportsDir = workspace.child("Checkmarx").child("Reports");
+            int copied = reportsDir.copyRecursiveTo(String.join(",", reports), new FilePath(checkmarxBuildDir));
+            log.debug("Copied " + copied + " report(s) to " + checkmarxBuildDir.getAbsolutePath());
+        } catch (IOException e) {
+            log.warn("Failed to copy reports to the build directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps a copy of the workspace reports of the scan in the build directory, for the builds that reuse its
+     * results.
+     */
+    private void stageWorkspaceReports(FilePath workspace, RemoteScanInfo scanInfo, File checkmarxBuildDir)
+            throws InterruptedException {
+        List<String> reports = scanInfo.getWorkspaceReports();
+        if (reports == null || reports.isEmpty()) {
+            return;
+        }
+        try {
+            FilePath reportsDir = workspace.child("Checkmarx").child("Reports");
+            reportsDir.copyRecursiveTo(String.join(",", reports),
+                    new FilePath(new File(checkmarxBuildDir, ScanResultCache.WORKSPACE_REPORTS_DIR)));
+        } catch (IOException e) {
+            log.warn("Failed to keep the workspace reports for builds that reuse the results: " + e.getMessage());
         }
+    }
 
-        // If user asked to perform full scan after every 9 incremental scans -
-        // it means that every 10th scan should be full,
-        // that is the ordinal numbers of full scans will be "1", "11", "21" and so on...
-        boolean shouldBeFullScan = buildNumber % (fullScanCycle + 1) == 1;
+    /**
+     * Writes the workspace reports of reused results to the workspace of this build, as if it had scanned.
+     */
+    private void restoreWorkspaceReports(FilePath workspace, File checkmarxBuildDir) throws InterruptedException {
+        File reports = new File(checkmarxBuildDir, ScanResultCache.WORKSPACE_REPORTS_DIR);
+        if (!reports.isDirectory()) {
+            return;
+        }
+        try {
+            int copied = new FilePath(reports).copyRecursiveTo(workspace.child("Checkmarx").child("Reports"));
+            log.info("Copied " + copied + " report(s) of the reused results to the workspace.");
+        } catch (IOException e) {
+            log.warn("Failed to copy the reports of the reused results to the workspace: " + e.getMessage());
+        } finally {
+            FileUtils.deleteQuietly(reports);
+        }
+    }
 
-        return !shouldBeFullScan;
+    private void recordScanAdmission(FilePath workspace, RemoteScanInfo scanInfo) {
+        Computer computer = workspace.toComputer();
+        String nodeName = computer == null ? "unknown" : computer.getDisplayName();
+        ScanAdmissionScheduler.recordAdmission(nodeName, scanInfo.getAdmissionWaitMillis(), scanInfo.getAdmissionQueueDepth());
     }
 
     // Check what triggered this build, and in case the trigger was SCM
@@ -2693,6 +3461,25 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         private final String DEPENDENCY_SCAN_CONFIG_PROP = "dependencyScanConfig";
         private DependencyScanConfig dependencyScanConfig;
         private boolean hideDebugLogs = false;
+        @Nullable
+        private Integer maxConcurrentScansPerAgent;
+
+        private final transient LegacyClientSessionCache sessionCache = new LegacyClientSessionCache();
+        private final transient ServerMetadataCache metadataCache = new ServerMetadataCache();
+        @Nullable
+        private Integer metadataCacheTtl; // In minutes.
+        @Nullable
+        private Integer trendBuildWindow;
+        @Nullable
+        private Boolean sharedStatusPolling;
+        @Nullable
+        private Boolean parallelSourcePackaging;
+        @Nullable
+        private JsonReportFormat jsonReportFormat;
+        @Nullable
+        private Boolean coalesceDuplicateScans;
+        @Nullable
+        private Integer resultCacheSizeMb;
 
         public DescriptorImpl() {
             load();
@@ -2950,6 +3737,84 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             this.hideDebugLogs = hideDebugLogs;
         }
 
+        public int getMaxConcurrentScansPerAgent() {
+            return maxConcurrentScansPerAgent == null || maxConcurrentScansPerAgent < 1
+                    ? ScanAdmissionScheduler.DEFAULT_MAX_CONCURRENT_SCANS : maxConcurrentScansPerAgent;
+        }
+
+        public void setMaxConcurrentScansPerAgent(@Nullable Integer maxConcurrentScansPerAgent) {
+            this.maxConcurrentScansPerAgent = maxConcurrentScansPerAgent;
+        }
+
+        public int getMetadataCacheTtl() {
+            return metadataCacheTtl == null || metadataCacheTtl < 0 ? ServerMetadataCache.DEFAULT_TTL_MINUTES : metadataCacheTtl;
+        }
+
+        public void setMetadataCacheTtl(@Nullable Integer metadataCacheTtl) {
+            this.metadataCacheTtl = metadataCacheTtl;
+        }
+
+        public int getTrendBuildWindow() {
+            return trendBuildWindow == null || trendBuildWindow < 1 ? CxTrendIndex.DEFAULT_WINDOW : trendBuildWindow;
+        }
+
+        public void setTrendBuildWindow(@Nullable Integer trendBuildWindow) {
+            this.trendBuildWindow = trendBuildWindow;
+        }
+
+        public boolean isSharedStatusPolling() {
+            return sharedStatusPolling != null && sharedStatusPolling;
+        }
+
+        public void setSharedStatusPolling(@Nullable Boolean sharedStatusPolling) {
+            this.sharedStatusPolling = sharedStatusPolling;
+        }
+
+        public boolean isParallelSourcePackaging() {
+            return parallelSourcePackaging == null || parallelSourcePackaging;
+        }
+
+        public void setParallelSourcePackaging(@Nullable Boolean parallelSourcePackaging) {
+            this.parallelSourcePackaging = parallelSourcePackaging;
+        }
+
+        public boolean isCoalesceDuplicateScans() {
+            return coalesceDuplicateScans != null && coalesceDuplicateScans;
+        }
+
+        public void setCoalesceDuplicateScans(@Nullable Boolean coalesceDuplicateScans) {
+            this.coalesceDuplicateScans = coalesceDuplicateScans;
+        }
+
+        public int getResultCacheSizeMb() {
+            return resultCacheSizeMb == null || resultCacheSizeMb < 0 ? 0 : resultCacheSizeMb;
+        }
+
+        public void setResultCacheSizeMb(@Nullable Integer resultCacheSizeMb) {
+            this.resultCacheSizeMb = resultCacheSizeMb;
+        }
+
+        public JsonReportFormat getJsonReportFormat() {
+            return jsonReportFormat == null ? JsonReportFormat.PRETTY : jsonReportFormat;
+        }
+
+        public void setJsonReportFormat(@Nullable JsonReportFormat jsonReportFormat) {
+            this.jsonReportFormat = jsonReportFormat;
+        }
+
+        public List<ScanAdmissionScheduler.NodeStatistics> getScanAdmissionStatistics() {
+            return ScanAdmissionScheduler.getNodeStatistics();
+        }
+
+        @POST
+        public FormValidation doCheckMaxConcurrentScansPerAgent(@QueryParameter final Integer value) {
+            Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+            if (value == null || value >= 1) {
+                return FormValidation.ok();
+            }
+            return FormValidation.error("Number must be greater than or equal to 1");
+        }
+
         @POST
         public FormValidation doCheckScanTimeoutDuration(@QueryParameter final Integer value) {
             Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
@@ -3559,21 +4424,94 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
          */
         private LegacyClient prepareLoggedInClient(CxConnectionDetails connDetails)
                 throws IOException, CxClientException {
-            LegacyClient ret;
-            Jenkins instance = Jenkins.getInstance();
+            resolveProxy(connDetails);
+            LegacyClient ret = CommonClientFactory.getInstance(connDetails, this.isEnableCertificateValidation(), serverLog);
+            ret.login();
+            return ret;
+        }
 
+        private void resolveProxy(CxConnectionDetails connDetails) {
+            Jenkins instance = Jenkins.getInstance();
             if (connDetails.isProxy()) {
                 if (instance != null && instance.proxy != null && isCxURLinNoProxyHost(serverUrl, instance.proxy.getNoProxyHostPatterns())) {
                     connDetails.setProxy(false);
                 }
-                ret = CommonClientFactory.getInstance(connDetails, this.isEnableCertificateValidation(), serverLog);
             } else {
                 connDetails.setProxy(false);
-                ret = CommonClientFactory.getInstance(connDetails, this.isEnableCertificateValidation(), serverLog);
             }
+        }
 
-            ret.login();
-            return ret;
+        // Runs the given call with a logged in client, reusing the cached session of the same server and credentials
+        /*
+         *  Note: This method is called concurrently by multiple threads, the session cache is thread safe.
+         */
+        private <T> T withLoggedInClient(CxConnectionDetails connDetails, LegacyClientSessionCache.ClientCall<T> call)
+                throws Exception {
+            resolveProxy(connDetails);
+            String key = LegacyClientSessionCache.keyOf(connDetails, isEnableCertificateValidation());
+            return sessionCache.execute(key, () -> prepareLoggedInClient(connDetails), call);
+        }
+
+        // Returns a server list from the metadata cache, loading it with a logged in client when needed
+        /*
+         *  Note: This method is called concurrently by multiple threads, the metadata cache is thread safe.
+         */
+        private <T> T getServerMetadata(CxConnectionDetails connDetails, ServerMetadataCache.Type type,
+                                        LegacyClientSessionCache.ClientCall<T> call) throws Exception {
+            resolveProxy(connDetails);
+            String key = LegacyClientSessionCache.keyOf(connDetails, isEnableCertificateValidation());
+            return metadataCache.get(key, type, getMetadataCacheTtl(), () -> withLoggedInClient(connDetails, call));
+        }
+
+        // Resolves a team id to its full path from the cached team list, reloading the list when the id is not in it
+        /*
+         *  Note: This method is called concurrently by multiple threads, the metadata cache is thread safe.
+         */
+        String getTeamPath(CxConnectionDetails connDetails, String teamId, LegacyClientSessionCache.ClientFactory factory)
+                throws Exception {
+            String key = LegacyClientSessionCache.keyOf(connDetails, isEnableCertificateValidation());
+            ServerMetadataCache.Loader<List<Team>> loader = () -> sessionCache.execute(key, factory, LegacyClient::getTeamList);
+            String teamPath = findTeamPath(metadataCache.get(key, ServerMetadataCache.Type.TEAMS, getMetadataCacheTtl(), loader), teamId);
+            if (teamPath == null && getMetadataCacheTtl() > 0) {
+                // The team may have been created after the list was loaded.
+                teamPath = findTeamPath(metadataCache.reload(key, ServerMetadataCache.Type.TEAMS, getMetadataCacheTtl(), loader), teamId);
+            }
+            return teamPath;
+        }
+
+        private static String findTeamPath(List<Team> teams, String teamId) {
+            if (teams != null) {
+                for (Team team : teams) {
+                    if (teamId.equals(team.getId())) {
+                        return team.getFullName();
+                    }
+                }
+            }
+            return null;
+        }
+
+        @POST
+        public FormValidation doRefreshServerMetadata(@QueryParameter final boolean useOwnServerCredentials, @QueryParameter final String serverUrl,
+                                                      @QueryParameter final String username, @QueryParameter final String password,
+                                                      @QueryParameter final String timestamp, @QueryParameter final String credentialsId,
+                                                      @QueryParameter final boolean isProxy, @AncestorInPath Item item) {
+            if (item == null) {
+                return FormValidation.ok();
+            }
+            item.checkPermission(Item.CONFIGURE);
+            // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
+            try {
+                CxConnectionDetails connDetails = CxConnectionDetails.resolveCred(!useOwnServerCredentials, serverUrl, username,
+                        StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, isProxy, this, item);
+                resolveProxy(connDetails);
+                int refreshed = metadataCache.refresh(LegacyClientSessionCache.keyOf(connDetails, isEnableCertificateValidation()));
+                if (refreshed == 0) {
+                    return FormValidation.ok("Nothing cached yet, lists are loaded from the Checkmarx server.");
+                }
+                return FormValidation.ok("Reloading " + refreshed + " list(s) from the Checkmarx server. Reopen the page to see the updated lists.");
+            } catch (Exception e) {
+                return buildError(e, "Failed to refresh Checkmarx lists");
+            }
         }
 
         @POST
@@ -3587,12 +4525,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             item.checkPermission(Item.CONFIGURE);
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
-            LegacyClient commonClient = null;
             try {
                 CxConnectionDetails connDetails = CxConnectionDetails.resolveCred(!useOwnServerCredentials, serverUrl, username,
                         StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, isProxy, this, item);
-                commonClient = prepareLoggedInClient(connDetails);
-                List<PostAction> teamList = commonClient.getPostScanActionList();
+                List<PostAction> teamList = getServerMetadata(connDetails, ServerMetadataCache.Type.POST_SCAN_ACTIONS, LegacyClient::getPostScanActionList);
                 if (listBoxModel.isEmpty() && !listBoxModel.contains("")){
                     listBoxModel.add(new ListBoxModel.Option("", Integer.toString(0)));
                 }
@@ -3611,10 +4547,6 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 String message = "Provide Checkmarx server credentials to see teams list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
                 return listBoxModel;
-            } finally {
-                if (commonClient != null) {
-                    commonClient.close();
-                }
             }
         }
 
@@ -3633,12 +4565,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             item.checkPermission(Item.CONFIGURE);
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ComboBoxModel projectNames = new ComboBoxModel();
-            LegacyClient commonClient = null;
             try {
                 CxConnectionDetails connDetails = CxConnectionDetails.resolveCred(!useOwnServerCredentials, serverUrl, username,
                         getPasswordPlainText(password), credentialsId, isProxy, this, item);
-                commonClient = prepareLoggedInClient(connDetails);
-                List<Project> projects = commonClient.getAllProjects();
+                List<Project> projects = getServerMetadata(connDetails, ServerMetadataCache.Type.PROJECTS, LegacyClient::getAllProjects);
 
                 for (Project p : projects) {
                     projectNames.add(p.getName());
@@ -3648,10 +4578,6 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             } catch (Exception e) {
                 serverLog.error("Failed to populate project list: " + e.toString(), e);
                 return projectNames; // Return empty list of project names
-            } finally {
-                if (commonClient != null) {
-                    commonClient.close();
-                }
             }
         }
 
@@ -3683,10 +4609,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             try {
                 CxConnectionDetails connDetails = CxConnectionDetails.resolveCred(!useOwnServerCredentials, serverUrl, username,
                         StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, isProxy, this, item);
-                LegacyClient commonClient = prepareLoggedInClient(connDetails);
 
                 //todo import preset
-                List<Preset> presets = commonClient.getPresetList();
+                List<Preset> presets = getServerMetadata(connDetails, ServerMetadataCache.Type.PRESETS, LegacyClient::getPresetList);
                 listBoxModel.add(new ListBoxModel.Option(LegacyClient.PRESETNAME_PROJET_SETTING_DEFAULT, LegacyClient.PRESETID_PROJET_SETTING_DEFAULT));
                 for (Preset p : presets) {
                     listBoxModel.add(new ListBoxModel.Option(p.getName(), Integer.toString(p.getId())));
@@ -3735,14 +4660,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             item.checkPermission(Item.CONFIGURE);
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
-            LegacyClient commonClient = null;
             try {
                 CxConnectionDetails connDetails = CxConnectionDetails.resolveCred(!useOwnServerCredentials, serverUrl, username,
                         StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, isProxy, this, item);
 
-                commonClient = prepareLoggedInClient(connDetails);
                 listBoxModel.add(new ListBoxModel.Option(PROJECT_DEFAULT_CONFIGURATION_NAME, String.valueOf(PROJECT_DEFAULT_CONFIGURATION_ID)));
-                List<CxNameObj> configurationList = commonClient.getConfigurationSetList();
+                List<CxNameObj> configurationList = getServerMetadata(connDetails, ServerMetadataCache.Type.CONFIGURATIONS, LegacyClient::getConfigurationSetList);
 
                 for (CxNameObj cs : configurationList) {
                     listBoxModel.add(new ListBoxModel.Option(cs.getName(), Long.toString(cs.getId())));
@@ -3752,10 +4675,6 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 serverLog.error("Failed to populate source encodings list: " + e.getMessage());
                 String message = "Provide Checkmarx server credentials to see source encodings list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
-            } finally {
-                if (commonClient != null) {
-                    commonClient.close();
-                }
             }
 
             return listBoxModel;
@@ -3779,13 +4698,11 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             item.checkPermission(Item.CONFIGURE);
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
-            LegacyClient commonClient = null;
             try {
                 CxConnectionDetails connDetails = CxConnectionDetails.resolveCred(!useOwnServerCredentials, serverUrl, username,
                         StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, isProxy, this, item);
-                commonClient = prepareLoggedInClient(connDetails);
 
-                commonClient.getTeamList().stream().sorted(
+                getServerMetadata(connDetails, ServerMetadataCache.Type.TEAMS, LegacyClient::getTeamList).stream().sorted(
                         (firstElmnt, secondElmnt) ->
                                 firstElmnt.getFullName().compareToIgnoreCase(secondElmnt.fullName))
                         .forEach(team ->
@@ -3798,10 +4715,6 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 String message = "Provide Checkmarx server credentials to see teams list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
                 return listBoxModel;
-            } finally {
-                if (commonClient != null) {
-                    commonClient.close();
-                }
             }
         }
         @POST
@@ -4110,6 +5023,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             setGloballyDefineScanSettings(pluginData.has(DEPENDENCY_SCAN_CONFIG_PROP));
             req.bindJSON(this, pluginData);
             save();
+            // Server or credentials may have changed, drop the cached sessions and lists
+            sessionCache.clear();
+            metadataCache.clear();
             return super.configure(req, formData);
         }
 
@@ -1,27 +1,45 @@
 package com.checkmarx.jenkins;
 
 import com.cx.restclient.CxClientDelegator;
+import com.cx.restclient.ast.dto.sca.AstScaResults;
+import com.cx.restclient.common.summary.SummaryUtils;
 import com.cx.restclient.configuration.CxScanConfig;
 import com.cx.restclient.dto.ProxyConfig;
 import com.cx.restclient.dto.Results;
 import com.cx.restclient.dto.ScanResults;
 import com.cx.restclient.dto.ScannerType;
 import com.cx.restclient.exception.CxClientException;
+import com.cx.restclient.osa.dto.OSAResults;
+import freemarker.template.TemplateException;
+import hudson.AbortException;
 import hudson.FilePath;
 import hudson.ProxyConfiguration;
 import hudson.model.TaskListener;
+import hudson.remoting.Channel;
 import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.commons.io.FileUtils;
 import org.jenkinsci.remoting.RoleChecker;
 import com.cx.restclient.sast.dto.SASTResults;
-import com.cx.restclient.sast.dto.CxXMLResults;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,14 +47,29 @@ import java.util.logging.Logger;
 public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Serializable {
 
     private static final long serialVersionUID = 1L;
-
-    private static final Semaphore semaphore = new Semaphore(1);
+    private static final long PENDING_SCAN_POLL_SECONDS = 20;
+    private static final long DEFAULT_SUBMISSION_TIMEOUT_MINUTES = 60;
 
     private final CxScanConfig config;
     private final TaskListener listener;
     private ProxyConfiguration jenkinsProxy = null;
     private boolean hideDebugLogs;
     private Map<String, String> fsaVars;
+    private int maxConcurrentScans = ScanAdmissionScheduler.DEFAULT_MAX_CONCURRENT_SCANS;
+    private String jobName = "";
+    private String sastPdfLink;
+    private String scaPdfLink;
+    private boolean asyncHtmlRemoval;
+    private boolean submitOnly;
+    private boolean keepSubmittedScan;
+    private SastResultFilter resultFilter;
+    private String submittedScanHandle;
+    private long pendingScanId;
+    private String sourceDigestSettings;
+    private String previousSourceDigest;
+    private long previousScanId;
+    private boolean packageSources;
+    private JsonReportFormat jsonReportFormat = JsonReportFormat.PRETTY;
 
 
     public CxScanCallable(CxScanConfig config, TaskListener listener, boolean hideDebugLogs, Map<String, String> fsaVars) {
@@ -55,6 +88,96 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
         this.fsaVars = fsaVars;
     }
 
+    /**
+     * @param maxConcurrentScans number of SAST/SCA submissions the agent may run at the same time
+     */
+    public void setMaxConcurrentScans(int maxConcurrentScans) {
+        this.maxConcurrentScans = maxConcurrentScans;
+    }
+
+    /**
+     * @param jobName full name of the job, the agent admits the scans of different jobs in turn
+     */
+    public void setJobName(String jobName) {
+        this.jobName = jobName;
+    }
+
+    /**
+     * @param sastPdfLink      build page URL of the SAST PDF report, shown in the HTML report
+     * @param scaPdfLink       build page URL of the SCA PDF report, shown in the HTML report
+     * @param asyncHtmlRemoval whether the HTML report is omitted for asynchronous scans
+     */
+    public void setReportOptions(String sastPdfLink, String scaPdfLink, boolean asyncHtmlRemoval) {
+        this.sastPdfLink = sastPdfLink;
+        this.scaPdfLink = scaPdfLink;
+        this.asyncHtmlRemoval = asyncHtmlRemoval;
+    }
+
+    /**
+     * @param jsonReportFormat layout of the dependency scan JSON reports
+     */
+    public void setJsonReportFormat(JsonReportFormat jsonReportFormat) {
+        this.jsonReportFormat = jsonReportFormat;
+    }
+
+    /**
+     * @param submitOnly whether to return right after the scans were submitted, without waiting for results
+     */
+    public void setSubmitOnly(boolean submitOnly) {
+        this.submitOnly = submitOnly;
+    }
+
+    /**
+     * @param packageSources whether the SAST sources are zipped by {@link SourcePackager} instead of the client
+     */
+    public void setPackageSources(boolean packageSources) {
+        this.packageSources = packageSources;
+    }
+
+    /**
+     * @param resultFilter filter applied to the SAST results before reports are written, see {@link SastResultFilter}
+     */
+    public void setResultFilter(SastResultFilter resultFilter) {
+        this.resultFilter = resultFilter;
+    }
+
+    /**
+     * @param keepSubmittedScan whether a scan submitted with {@link #setSubmitOnly(boolean)} is kept on this agent,
+     *                          so its results can be collected by a later call with {@link #setSubmittedScanHandle(String)}
+     */
+    public void setKeepSubmittedScan(boolean keepSubmittedScan) {
+        this.keepSubmittedScan = keepSubmittedScan;
+    }
+
+    /**
+     * @param submittedScanHandle handle of a scan kept on the agent, whose results are collected instead of
+     *                            submitting a new scan
+     */
+    public void setSubmittedScanHandle(String submittedScanHandle) {
+        this.submittedScanHandle = submittedScanHandle;
+    }
+
+    /**
+     * Reuses the results of the last successful scan of the project when the sources did not change since.
+     *
+     * @param settings       scan settings included in the digest of the sources
+     * @param previousDigest digest of the sources of the last successful scan, null if none is known
+     * @param previousScanId id of the last successful scan
+     */
+    public void setSourceDigestCheck(String settings, String previousDigest, long previousScanId) {
+        this.sourceDigestSettings = settings;
+        this.previousSourceDigest = previousDigest;
+        this.previousScanId = previousScanId;
+    }
+
+    /**
+     * @param pendingScanId id of an already submitted SAST scan, waited for on this node when it did not end yet,
+     *                      whose results are retrieved instead of submitting a new scan
+     */
+    public void setPendingScanId(long pendingScanId) {
+        this.pendingScanId = pendingScanId;
+    }
+
     @Override
     public RemoteScanInfo invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
         CxLoggerAdapter log = new CxLoggerAdapter(listener.getLogger());
@@ -78,6 +201,23 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
             log.debug("Proxy password: *************");
         }
 
+        SubmittedScan submittedScan = submittedScanHandle != null ? SubmittedScan.take(submittedScanHandle) : null;
+        if (submittedScan != null) {
+            log.info("Collecting results of the submitted scans.");
+            // The controller may have used part of the timeout while it followed the scan.
+            submittedScan.config.setSastScanTimeoutInMinutes(config.getSastScanTimeoutInMinutes());
+            return collectResults(file, submittedScan.delegator, submittedScan.results, submittedScan.createScanResults,
+                    submittedScan.result, waitForScanResults(submittedScan.delegator, submittedScan.createScanResults, log), log);
+        }
+        if (submittedScanHandle != null) {
+            // The agent restarted or dropped the scan meanwhile, never submit the same sources again.
+            if (pendingScanId <= 0) {
+                throw new AbortException("The submitted scan is no longer kept on this agent.");
+            }
+            log.info("The submitted scan is no longer kept on this agent, retrieving the results of scan "
+                    + pendingScanId + " instead.");
+        }
+
         RemoteScanInfo result = new RemoteScanInfo();
         CxClientDelegator delegator = null;
         List<ScanResults> results = new ArrayList<>();
@@ -140,11 +280,183 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
             throw new IOException(message);
         }
         
+        ScanResults createScanResults = null;
+        ScanResults scanResults = null;
+        if (pendingScanId > 0) {
+            scanResults = getPendingScanResults(delegator, log);
+        } else if (sourceDigestSettings != null) {
+            scanResults = reuseUnchangedScan(file, delegator, result, log);
+        }
+
+        if (scanResults == null) {
+            createScanResults = submitScans(file, delegator, result, log);
+            results.add(createScanResults);
+            if (submitOnly) {
+                SASTResults submitted = createScanResults.getSastResults();
+                if (submitted != null && submitted.getException() == null) {
+                    result.setSubmittedScanId(submitted.getScanId());
+                }
+                if (keepSubmittedScan) {
+                    result.setSubmittedScanHandle(SubmittedScan.put(
+                            new SubmittedScan(config, delegator, results, createScanResults, result)));
+                }
+                result.setScanResults(getFinalScanResults(results));
+                setServerVersion(result);
+                packForController(result, log);
+                return result;
+            }
+            scanResults = config.getSynchronous() ? waitForScanResults(delegator, createScanResults, log) : delegator.getLatestScanResults();
+        }
+
+        return collectResults(file, delegator, results, createScanResults, result, scanResults, log);
+    }
+
+    /**
+     * Waits for the pending scan to end, then retrieves its results. The client only retrieves the results of the
+     * latest finished scan of the project, so this fails when another scan of the project finished after it.
+     */
+    private ScanResults getPendingScanResults(CxClientDelegator delegator, CxLoggerAdapter log)
+            throws IOException, InterruptedException {
+        CxScanStatusClient.ScanStatus status = awaitPendingScan(log);
+        if (!"Finished".equalsIgnoreCase(status.getStage())) {
+            throw new AbortException("Scan " + pendingScanId + " ended with status " + status.getStage() + ".");
+        }
+        log.info("Retrieving results of scan " + pendingScanId + ".");
+        ScanResults scanResults = delegator.getLatestScanResults();
+        SASTResults sast = scanResults.getSastResults();
+        if (sast != null && sast.getException() == null && sast.getScanId() != pendingScanId) {
+            throw new AbortException("Latest finished scan of the project is " + sast.getScanId() +
+                    ", results of scan " + pendingScanId + " can no longer be retrieved.");
+        }
+        return scanResults;
+    }
+
+    /**
+     * Polls the status of the pending scan until it ends. The scan is canceled on the server when it does not end
+     * within the SAST scan timeout or when the build is aborted.
+     */
+    private CxScanStatusClient.ScanStatus awaitPendingScan(CxLoggerAdapter log) throws IOException, InterruptedException {
+        Integer timeout = config.getSastScanTimeoutInMinutes();
+        long deadline = timeout != null && timeout > 0
+                ? System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeout) : Long.MAX_VALUE;
+        CxScanStatusClient client;
+        try {
+            client = CommonClientFactory.getStatusClient(config, log);
+            client.login();
+        } catch (CxClientException e) {
+            throw new IOException("Failed to read the status of scan " + pendingScanId + ": " + e.getMessage(), e);
+        }
+        try {
+            String lastStage = null;
+            while (true) {
+                CxScanStatusClient.ScanStatus status = client.getScanStatus(pendingScanId);
+                if (status.isDone()) {
+                    return status;
+                }
+                if (!String.valueOf(status.getStage()).equals(lastStage)) {
+                    log.info("Scan status: " + status);
+                    lastStage = status.getStage();
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    cancelPendingScan(client, "Scan did not finish within " + timeout + " minutes", log);
+                    throw new AbortException("Scan " + pendingScanId + " did not finish within " + timeout + " minutes.");
+                }
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(PENDING_SCAN_POLL_SECONDS));
+                } catch (InterruptedException e) {
+                    cancelPendingScan(client, "Build aborted", log);
+                    throw e;
+                }
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    private void cancelPendingScan(CxScanStatusClient client, String reason, CxLoggerAdapter log) {
+        try {
+            client.cancelScan(pendingScanId);
+            log.info(reason + ", scan " + pendingScanId + " was canceled on the server.");
+        } catch (IOException | RuntimeException e) {
+            log.warn(reason + ", failed to cancel scan " + pendingScanId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Computes the digest of the sources to scan and, when it matches the digest of the last successful scan of
+     * the project, retrieves the results of that scan instead of scanning the same sources again.
+     *
+     * @return results of the previous scan, null if a new scan is needed
+     */
+    private ScanResults reuseUnchangedScan(File file, CxClientDelegator delegator, RemoteScanInfo result,
+                                           CxLoggerAdapter log) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        try {
+            result.setSourceDigest(WorkspaceDigest.compute(file, config.getSastFilterPattern(),
+                    config.getSastFolderExclusions(), sourceDigestSettings));
+        } catch (IOException e) {
+            log.warn("Failed to compute the digest of the sources, scanning them: " + e.getMessage());
+            return null;
+        }
+        log.info("Computed the digest of the sources in " + (System.currentTimeMillis() - start) + " ms.");
+        if (previousScanId <= 0 || !result.getSourceDigest().equals(previousSourceDigest)) {
+            return null;
+        }
+
+        ScanResults latest = delegator.getLatestScanResults();
+        SASTResults sast = latest.getSastResults();
+        if (sast == null || sast.getException() != null || sast.getScanId() != previousScanId) {
+            // Another job scanned the project since, its results do not match these sources.
+            log.info("Sources are unchanged, but scan " + previousScanId + " is no longer the latest scan of the project.");
+            return null;
+        }
+        log.info("Sources are unchanged since scan " + previousScanId + ", using its results instead of scanning again.");
+        result.setReusedScanId(previousScanId);
+        return latest;
+    }
+
+    private RemoteScanInfo collectResults(File file, CxClientDelegator delegator, List<ScanResults> results,
+                                          ScanResults createScanResults, RemoteScanInfo result,
+                                          ScanResults scanResults, CxLoggerAdapter log) throws InterruptedException {
+        (resultFilter != null ? resultFilter : SastResultFilter.defaults()).apply(scanResults.getSastResults(), log);
+        results.add(scanResults);
+        if (config.getSynchronous() && config.isSastEnabled() &&
+                ((createScanResults != null && createScanResults.getSastResults() != null && createScanResults.getSastResults().getException() != null && createScanResults.getSastResults().getScanId() > 0) || (scanResults.getSastResults() != null && scanResults.getSastResults().getException() != null))) {
+            cancelScan(delegator);
+        }
+        if (((config.isSastEnabled()||config.isOsaEnabled()) && config.getEnablePolicyViolations()) || (config.isAstScaEnabled() && config.getEnablePolicyViolationsSCA())) {
+            delegator.printIsProjectViolated(scanResults);
+        }
+        ScanResults finalScanResults = getFinalScanResults(results);
+        result.setScanResults(finalScanResults);
+        
+        setServerVersion(result);
+        writeReports(finalScanResults, new WorkspaceReportSink(file), result, log);
+        packForController(result, log);
+        return result;
+    }
+
+    /**
+     * Submits the scans once this agent admits them.
+     */
+    private ScanResults submitScans(File file, CxClientDelegator delegator, RemoteScanInfo result, CxLoggerAdapter log)
+            throws InterruptedException {
         Logger rootLog = null;
         OsaConsoleHandler handler = null;
+        ThreadGroup osaThreads = null;
         ScanResults createScanResults;
+        ScanAdmissionScheduler scheduler = ScanAdmissionScheduler.getInstance();
+        List<ScanAdmissionScheduler.Ticket> tickets = new ArrayList<>();
+        File sourcesZip = null;
         try {
-            semaphore.acquire();
+            if (config.isOsaEnabled()) {
+                tickets.add(scheduler.admit(ScanAdmissionScheduler.Lane.DEPENDENCY, 1, jobName, log));
+            }
+            if (config.isSastEnabled() || config.isAstScaEnabled()) {
+                tickets.add(scheduler.admit(ScanAdmissionScheduler.Lane.SAST_SCA, maxConcurrentScans, jobName, log));
+            }
+            recordAdmission(result, tickets);
+
             if (config.isOsaEnabled()) {
                 setFsaConfiguration();
                 //---------------------------
@@ -153,61 +465,456 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
                 handler = new OsaConsoleHandler();
                 handler.setLevel(Level.ALL);
                 handler.setFormatter(new ComponentScanFormatter());
+                // Other builds on this agent log through the same root logger. The scan runs in its own thread
+                // group, the threads the FSA component starts join it, so only the records of this scan are kept.
+                osaThreads = new ThreadGroup("Checkmarx OSA scan " + jobName);
+                ThreadGroup scanThreads = osaThreads;
+                handler.setFilter(record -> scanThreads.parentOf(Thread.currentThread().getThreadGroup()));
                 rootLog.addHandler(handler);
                 //---------------------------
             }
 
-            createScanResults = delegator.initiateScan();
-            results.add(createScanResults);
+            boolean concurrent = osaThreads == null && config.isSastEnabled() && config.isAstScaEnabled();
+            boolean zip = packageSources && config.isSastEnabled() && config.getZipFile() == null;
+            if (zip && !concurrent) {
+                sourcesZip = zipSources(file, log);
+            }
+            if (osaThreads != null) {
+                createScanResults = initiateInThreadGroup(osaThreads, delegator);
+            } else {
+                createScanResults = concurrent
+                        ? initiateScansConcurrently(zip ? file : null, delegator, log) : delegator.initiateScan();
+            }
             if (!config.getSynchronous()) {
                 log.info("Running in Asynchronous mode. Not waiting for scan to finish.");
             }
-           
+        } finally {
             if (rootLog != null) {
                 handler.flush();
                 rootLog.removeHandler(handler);
             }
+            if (osaThreads != null) {
+                try {
+                    osaThreads.destroy();
+                } catch (IllegalThreadStateException e) {
+                    // Threads of the FSA component still run, the group is left to them.
+                }
+            }
+            scheduler.release(tickets);
+            if (sourcesZip != null) {
+                config.setZipFile(null);
+                FileUtils.deleteQuietly(sourcesZip);
+            }
+        }
+        return createScanResults;
+    }
+
+    /**
+     * Submits the scans on a thread of the given group, the threads started meanwhile belong to the group too.
+     */
+    private ScanResults initiateInThreadGroup(ThreadGroup group, CxClientDelegator delegator) throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(group, runnable, group.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<ScanResults> submission = executor.submit(delegator::initiateScan);
+        try {
+            return submission.get();
+        } catch (InterruptedException e) {
+            submission.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CxClientException(cause.getMessage(), cause);
         } finally {
-            semaphore.release();
+            executor.shutdownNow();
         }
-        
-        ScanResults scanResults = config.getSynchronous() ? delegator.waitForScanResults() : delegator.getLatestScanResults();
-        SASTResults sast = scanResults.getSastResults();
-        if (sast != null && sast.getQueryList() != null) {
-            List<CxXMLResults.Query> filteredQueries = new ArrayList<>();
+    }
 
-            for (CxXMLResults.Query q : new ArrayList<>(sast.getQueryList())) {
-                if (q.getResult() != null) {
-                    q.getResult().removeIf(r -> "1".equals(String.valueOf(r.getState())));
+    /**
+     * Zips the SAST sources before submission, the client uploads the zip instead of zipping them itself.
+     *
+     * @return the zip, null when the client should zip the sources
+     */
+    private File zipSources(File file, CxLoggerAdapter log) throws InterruptedException {
+        File zip = null;
+        try {
+            zip = File.createTempFile("cx-sources-", ".zip");
+            SourcePackager.Summary summary = new SourcePackager(new SourceFileMatcher(config.getSastFilterPattern(),
+                    config.getSastFolderExclusions())).pack(file, zip);
+            log.info("Zipped SAST sources: " + summary + ".");
+            if (summary.getFiles() == 0) {
+                // Let the client report the empty source folder the way it always did.
+                FileUtils.deleteQuietly(zip);
+                return null;
+            }
+            config.setZipFile(zip);
+            return zip;
+        } catch (IOException e) {
+            log.warn("Failed to zip the sources, the Checkmarx client zips them instead: " + e.getMessage());
+            FileUtils.deleteQuietly(zip);
+            return null;
+        }
+    }
+
+    /**
+     * Submits the SAST and SCA scans on separate threads: source zipping and upload for SAST overlap with the
+     * dependency resolution for SCA. A failure or timeout of one scanner is recorded in its own results and does
+     * not stop the other one. A submission still running after its scanner's scan timeout, or
+     * {@link #DEFAULT_SUBMISSION_TIMEOUT_MINUTES} when none is set, is abandoned and the scan it may have created on
+     * the server is canceled.
+     *
+     * @param sources the folder the SAST task zips before its upload, null when the client zips the sources
+     */
+    private ScanResults initiateScansConcurrently(File sources, CxClientDelegator delegator, CxLoggerAdapter log)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2, new NamingThreadFactory(
+                new DaemonThreadFactory(), "Checkmarx scan submission"));
+        AtomicReference<File> sourcesZip = new AtomicReference<>();
+        try {
+            Future<Results> sast = executor.submit(() -> {
+                if (sources != null) {
+                    sourcesZip.set(zipSources(sources, log));
                 }
+                return delegator.getSastClient().initiateScan();
+            });
+            Future<Results> sca = executor.submit(() -> delegator.getScaClient().initiateScan());
 
-                if (q.getResult() == null || q.getResult().isEmpty()) {
-                    log.info("Skipping query (0 after NE filter): " + q.getName());
-                    continue;
+            ScanResults scanResults = new ScanResults();
+            scanResults.put(ScannerType.SAST, join(sast, new SASTResults(), "SAST",
+                    submissionTimeout(config.getSastScanTimeoutInMinutes()), log));
+            scanResults.put(ScannerType.AST_SCA, join(sca, new AstScaResults(), "SCA",
+                    submissionTimeout(config.getSCAScanTimeoutInMinutes()), log));
+            if (sast.isCancelled() || sca.isCancelled()) {
+                // Let the abandoned submission stop before canceling what it created.
+                executor.shutdownNow();
+                executor.awaitTermination(CxScanBuilder.CANCEL_GRACE_SECONDS, TimeUnit.SECONDS);
+            }
+            if (sast.isCancelled()) {
+                cancelAbortedScan(delegator, "SAST scan submission abandoned", log);
+            }
+            if (sca.isCancelled()) {
+                log.warn("SCA scan submission abandoned, a scan it may have created on the server is not canceled.");
+            }
+            return scanResults;
+        } finally {
+            executor.shutdownNow();
+            if (sourcesZip.get() != null) {
+                config.setZipFile(null);
+                FileUtils.deleteQuietly(sourcesZip.get());
+            }
+        }
+    }
+
+    private static long submissionTimeout(Integer scanTimeout) {
+        return scanTimeout != null && scanTimeout > 0 ? scanTimeout : DEFAULT_SUBMISSION_TIMEOUT_MINUTES;
+    }
+
+    private Results join(Future<Results> submission, Results failed, String scanner, long timeoutMinutes,
+                         CxLoggerAdapter log) throws InterruptedException {
+        try {
+            return submission.get(timeoutMinutes, TimeUnit.MINUTES);
+        } catch (TimeoutException e) {
+            submission.cancel(true);
+            failed.setException(new CxClientException(scanner + " scan was not submitted within "
+                    + timeoutMinutes + " minutes."));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            failed.setException(cause instanceof CxClientException
+                    ? (CxClientException) cause : new CxClientException(cause.getMessage(), cause));
+        } catch (InterruptedException e) {
+            submission.cancel(true);
+            throw e;
+        }
+        log.error("Failed to submit " + scanner + " scan: " + failed.getException().getMessage());
+        return failed;
+    }
+
+    /**
+     * Drops a scan kept on the agent whose results will not be collected, e.g. for an aborted or superseded build.
+     */
+    static final class DiscardSubmittedScan implements FilePath.FileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String handle;
+
+        DiscardSubmittedScan(String handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Void invoke(File file, VirtualChannel channel) {
+            SubmittedScan.take(handle);
+            return null;
+        }
+
+        @Override
+        public void checkRoles(RoleChecker checker) throws SecurityException {
+
+        }
+    }
+
+    /**
+     * Scans submitted on this agent whose results are collected by a later call from the controller, once the
+     * controller has seen them finish. Builds that stop waiting discard their entry, see {@link DiscardSubmittedScan},
+     * entries that are never collected are dropped after a day.
+     */
+    private static final class SubmittedScan {
+        private static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(24);
+        private static final Map<String, SubmittedScan> SUBMITTED = new HashMap<>();
+
+        private final CxScanConfig config;
+        private final CxClientDelegator delegator;
+        private final List<ScanResults> results;
+        private final ScanResults createScanResults;
+        private final RemoteScanInfo result;
+        private final long created = System.currentTimeMillis();
+
+        private SubmittedScan(CxScanConfig config, CxClientDelegator delegator, List<ScanResults> results,
+                              ScanResults createScanResults, RemoteScanInfo result) {
+            this.config = config;
+            this.delegator = delegator;
+            this.results = results;
+            this.createScanResults = createScanResults;
+            this.result = result;
+        }
+
+        private static synchronized String put(SubmittedScan scan) {
+            long now = System.currentTimeMillis();
+            SUBMITTED.values().removeIf(s -> now - s.created > MAX_AGE_MILLIS);
+            String handle = UUID.randomUUID().toString();
+            SUBMITTED.put(handle, scan);
+            return handle;
+        }
+
+        private static synchronized SubmittedScan take(String handle) {
+            return SUBMITTED.remove(handle);
+        }
+    }
+
+    private void setServerVersion(RemoteScanInfo result) {
+        if (config.getCxVersion() != null) {
+            result.setVersion(config.getCxVersion().getVersion());
+            result.setHotFix(config.getCxVersion().getHotFix());
+            result.setEnginePackVersion(config.getCxVersion().getEnginePackVersion());
+        }
+    }
+
+    /**
+     * Writes the workspace copy of every report on this node. Report payloads are dropped from the results
+     * afterwards, so they are not serialized back to the controller. The controller receives the report names
+     * and copies only the ones the build page needs.
+     */
+    private void writeReports(ScanResults scanResults, ReportSink sink, RemoteScanInfo result, CxLoggerAdapter log)
+            throws InterruptedException {
+        List<String> buildPageReports = new ArrayList<>();
+        List<String> workspaceReports = new ArrayList<>();
+        SASTResults sast = scanResults.getSastResults();
+        if (sast != null) {
+            byte[] xmlReport = sast.getRawXMLReport();
+            byte[] pdfReport = sast.getPDFReport();
+            sast.setRawXMLReport(null);
+            sast.setPDFReport(null);
+            if (sastPdfLink != null) {
+                sast.setSastPDFLink(sastPdfLink);
+            }
+            if (config.getSynchronous() && sast.isSastResultsReady()) {
+                if (xmlReport != null && !Boolean.FALSE.equals(config.getGenerateXmlReport())
+                        && writeReport(sink, CxScanBuilder.SCAN_REPORT_XML, xmlReport, log)) {
+                    result.setSastXmlReportPath(sink.getLocation(CxScanBuilder.SCAN_REPORT_XML));
+                    workspaceReports.add(CxScanBuilder.SCAN_REPORT_XML);
                 }
+                if (pdfReport != null && writeReport(sink, CxScanResult.PDF_REPORT_NAME, pdfReport, log)) {
+                    buildPageReports.add(CxScanResult.PDF_REPORT_NAME);
+                }
+            }
+        }
 
-                filteredQueries.add(q);
+        AstScaResults sca = scanResults.getScaResults();
+        if (sca != null) {
+            if (scaPdfLink != null) {
+                sca.setScaPDFLink(scaPdfLink);
             }
+            byte[] pdfReport = sca.getPDFReport();
+            if (pdfReport != null && config.getSynchronous() && sca.isScaResultReady() && config.isGenerateScaReport()
+                    && "pdf".equalsIgnoreCase(config.getScaReportFormat())) {
+                sca.setPDFReport(null);
+                if (writeReport(sink, CxScanResult.SCA_PDF_REPORT_NAME, pdfReport, log)) {
+                    buildPageReports.add(CxScanResult.SCA_PDF_REPORT_NAME);
+                }
+            }
+        }
 
-            sast.setQueryList(filteredQueries);
+        if (config.getSynchronous()) {
+            workspaceReports.addAll(writeDependencyReports(scanResults, sink, log));
         }
-        results.add(scanResults);
-        if (config.getSynchronous() && config.isSastEnabled() &&
-                ((createScanResults.getSastResults() != null && createScanResults.getSastResults().getException() != null && createScanResults.getSastResults().getScanId() > 0) || (scanResults.getSastResults() != null && scanResults.getSastResults().getException() != null))) {
-            cancelScan(delegator);
+
+        if (shouldGenerateHtmlReport(scanResults)) {
+            String reportName = generateHtmlReport(scanResults, sink, result.getCxARMUrl(), log);
+            if (reportName != null) {
+                result.setHtmlReportName(reportName);
+                buildPageReports.add(reportName);
+            }
         }
-        if (((config.isSastEnabled()||config.isOsaEnabled()) && config.getEnablePolicyViolations()) || (config.isAstScaEnabled() && config.getEnablePolicyViolationsSCA())) {
-            delegator.printIsProjectViolated(scanResults);
+        result.setBuildPageReports(buildPageReports);
+        workspaceReports.addAll(buildPageReports);
+        result.setWorkspaceReports(workspaceReports);
+    }
+
+    /**
+     * Writes the summary, libraries and vulnerabilities documents of the dependency scan concurrently.
+     *
+     * @return names of the written reports
+     */
+    private List<String> writeDependencyReports(ScanResults scanResults, ReportSink sink, CxLoggerAdapter log)
+            throws InterruptedException {
+        List<String> written = new ArrayList<>();
+        Map<String, Object> reports = new LinkedHashMap<>();
+        OSAResults osa = scanResults.getOsaResults();
+        AstScaResults sca = scanResults.getScaResults();
+        if (osa != null && osa.isOsaResultsReady()) {
+            reports.put(CxScanBuilder.OSA_SUMMERY_JSON, osa.getResults());
+            reports.put(CxScanBuilder.OSA_LIBRARIES_JSON, osa.getOsaLibraries());
+            reports.put(CxScanBuilder.OSA_VULNERABILITIES_JSON, osa.getOsaVulnerabilities());
+        } else if (sca != null && sca.isScaResultReady()) {
+            reports.put(CxScanBuilder.SCA_SUMMERY_JSON, sca.getSummary());
+            reports.put(CxScanBuilder.SCA_LIBRARIES_JSON, sca.getPackages());
+            reports.put(CxScanBuilder.SCA_VULNERABILITIES_JSON, sca.getFindings());
         }
-        ScanResults finalScanResults = getFinalScanResults(results);
-        result.setScanResults(finalScanResults);
-        
-    	if(config.getCxVersion()!=null) {
-    		result.setVersion(config.getCxVersion().getVersion());
-    		result.setHotFix(config.getCxVersion().getHotFix());
-    		result.setEnginePackVersion(config.getCxVersion().getEnginePackVersion());
-    	}
-        return result;
+        if (reports.isEmpty()) {
+            return written;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(reports.size(), new NamingThreadFactory(
+                new DaemonThreadFactory(), "Checkmarx report writer"));
+        try {
+            List<Future<String>> writes = new ArrayList<>();
+            for (Map.Entry<String, Object> report : reports.entrySet()) {
+                writes.add(executor.submit(() -> writeJsonReport(sink, report.getKey(), report.getValue(), log)));
+            }
+            for (Future<String> write : writes) {
+                String name = write.get();
+                if (name != null) {
+                    written.add(name);
+                }
+            }
+        } catch (ExecutionException e) {
+            log.error("Failed to write dependency scan reports: " + e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        return written;
+    }
+
+    /**
+     * @return name of the written report, null if it was not written
+     */
+    private String writeJsonReport(ReportSink sink, String fileName, Object content, CxLoggerAdapter log) {
+        try {
+            String written = JsonReportWriter.write(sink, fileName, content, jsonReportFormat);
+            log.info("Report {} written to {}", written, sink.getLocation(written));
+            return written;
+        } catch (IOException e) {
+            log.error("Failed to write '" + fileName + "' to [" + sink.getLocation(fileName) + "]", e);
+            return null;
+        }
+    }
+
+    /**
+     * Sends only the compact form of the results to the controller, reports were already written on this node.
+     */
+    private void packForController(RemoteScanInfo result, CxLoggerAdapter log) {
+        if (Channel.current() == null || result.getScanResults() == null) {
+            // Running on the controller, nothing is sent over a channel.
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ScanResultsTransport.stripDetails(result.getScanResults());
+        try {
+            int size = result.pack();
+            log.info("Scan results packed for the controller: " + FileUtils.byteCountToDisplaySize(size)
+                    + " in " + (System.currentTimeMillis() - start) + " ms.");
+        } catch (IOException e) {
+            log.warn("Failed to pack scan results, sending them as is: " + e.getMessage());
+        }
+    }
+
+    private boolean writeReport(ReportSink sink, String fileName, byte[] content, CxLoggerAdapter log) {
+        try {
+            sink.write(fileName, content);
+            log.info("Report {} written to {}", fileName, sink.getLocation(fileName));
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to write [" + fileName + "] to workspace: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean shouldGenerateHtmlReport(ScanResults results) {
+        if (config.getSynchronous()) {
+            return true;
+        }
+        if (asyncHtmlRemoval) {
+            return false;
+        }
+
+        /* For asynchronous scan, if reports are not ready or report of previous successful scan is not
+         found, HTML Report is not generated*/
+        SASTResults sastResults = results.getSastResults();
+        OSAResults osaResults = results.getOsaResults();
+        AstScaResults scaResults = results.getScaResults();
+        boolean sastReady = sastResults != null && sastResults.isSastResultsReady();
+
+        /*If a combination scan is run(SAST + OSA/SCA),
+        HTML report is generated only if, previous reports are available for both the scans*/
+        if (config.isOsaEnabled() || config.isAstScaEnabled()) {
+            return !((config.isOsaEnabled() && (osaResults == null || !osaResults.isOsaResultsReady()))
+                    || (config.isAstScaEnabled() && (scaResults == null || !scaResults.isScaResultReady()))
+                    || (config.isSastEnabled() && !sastReady));
+        }
+        return config.isSastEnabled() && sastReady;
+    }
+
+    private String generateHtmlReport(ScanResults results, ReportSink sink, String uiArmUrl, CxLoggerAdapter log) {
+        // The HTML report links to the CxARM web client rather than to its API.
+        config.setCxARMUrl(uiArmUrl);
+        ScannerType dependencyScanner = config.isOsaEnabled() ? ScannerType.OSA
+                : config.isAstScaEnabled() ? ScannerType.AST_SCA : null;
+        String reportName = CxScanResult.resolveHTMLReportName(config.isSastEnabled(), dependencyScanner);
+        try {
+            String reportHTML = SummaryUtils.generateSummary(results.getSastResults(), results.getOsaResults(), results.getScaResults(), config);
+            sink.write(reportName, reportHTML);
+            log.info("Report {} written to {}", reportName, sink.getLocation(reportName));
+            return reportName;
+        } catch (IOException | TemplateException e) {
+            log.error("Failed to generate HTML report. {}", e.getMessage());
+        } catch (NullPointerException e) {
+            String message = "";
+            if (results.getSastResults() != null && !results.getSastResults().isSastResultsReady()) {
+                message = "SAST results are empty.";
+            } else if (results.getOsaResults() != null && !results.getOsaResults().isOsaResultsReady()) {
+                message = "OSA results are empty.";
+            } else if (results.getScaResults() != null && !results.getScaResults().isScaResultReady()) {
+                message = "SCA results are empty.";
+            }
+            log.error("Failed to generate HTML report. {}", message);
+        }
+        return null;
+    }
+
+    private void recordAdmission(RemoteScanInfo result, List<ScanAdmissionScheduler.Ticket> tickets) {
+        long waitMillis = 0;
+        int queueDepth = 0;
+        for (ScanAdmissionScheduler.Ticket ticket : tickets) {
+            waitMillis += ticket.getWaitMillis();
+            queueDepth = Math.max(queueDepth, ticket.getQueueDepth());
+        }
+        result.setAdmissionWaitMillis(waitMillis);
+        result.setAdmissionQueueDepth(queueDepth);
     }
 
     private void setFsaConfiguration() {
@@ -222,6 +929,84 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
         }
     }
 
+    /**
+     * Waits for the submitted scans. When the build is aborted meanwhile, the SAST scan is canceled on the server
+     * so it does not keep an engine busy.
+     */
+    private ScanResults waitForScanResults(CxClientDelegator delegator, ScanResults createScanResults,
+                                           CxLoggerAdapter log) throws InterruptedException {
+        try {
+            ScanResults scanResults = waitForSubmittedScans(delegator, createScanResults, log);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            return scanResults;
+        } catch (InterruptedException e) {
+            cancelAbortedScan(delegator, "Build aborted", log);
+            throw e;
+        }
+    }
+
+    /**
+     * Scans submitted concurrently are waited for one by one, skipping a scanner whose submission failed: it has no
+     * scan to follow.
+     */
+    private ScanResults waitForSubmittedScans(CxClientDelegator delegator, ScanResults createScanResults,
+                                              CxLoggerAdapter log) {
+        if (!config.isSastEnabled() || !config.isAstScaEnabled()) {
+            return delegator.waitForScanResults();
+        }
+        boolean sastSubmitted = isSubmitted(createScanResults, ScannerType.SAST);
+        boolean scaSubmitted = isSubmitted(createScanResults, ScannerType.AST_SCA);
+        if (sastSubmitted && scaSubmitted) {
+            return delegator.waitForScanResults();
+        }
+        ScanResults scanResults = new ScanResults();
+        if (sastSubmitted) {
+            scanResults.put(ScannerType.SAST, delegator.getSastClient().waitForScanResults());
+        } else {
+            log.info("SAST scan was not submitted, not waiting for its results.");
+        }
+        if (scaSubmitted) {
+            scanResults.put(ScannerType.AST_SCA, delegator.getScaClient().waitForScanResults());
+        } else {
+            log.info("SCA scan was not submitted, not waiting for its results.");
+        }
+        return scanResults;
+    }
+
+    private static boolean isSubmitted(ScanResults createScanResults, ScannerType scanner) {
+        Results submitted = createScanResults != null ? createScanResults.get(scanner) : null;
+        return submitted == null || submitted.getException() == null;
+    }
+
+    private void cancelAbortedScan(CxClientDelegator delegator, String reason, CxLoggerAdapter log) {
+        if (!config.isSastEnabled()) {
+            return;
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor(new NamingThreadFactory(
+                new DaemonThreadFactory(), "Checkmarx scan cancellation"));
+        boolean interrupted = Thread.interrupted();
+        try {
+            executor.submit(() -> {
+                delegator.getSastClient().cancelSASTScan();
+                return null;
+            }).get(CxScanBuilder.CANCEL_GRACE_SECONDS, TimeUnit.SECONDS);
+            log.info(reason + ", SAST scan was canceled on the server.");
+        } catch (TimeoutException e) {
+            log.warn(reason + ", SAST scan was not canceled within " + CxScanBuilder.CANCEL_GRACE_SECONDS + " seconds.");
+        } catch (ExecutionException e) {
+            log.warn(reason + ", failed to cancel SAST scan: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            executor.shutdownNow();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private void cancelScan(CxClientDelegator delegator) {
         try {
             delegator.getSastClient().cancelSASTScan();
@@ -19,13 +19,19 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
-import java.util.Collection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,9 +63,13 @@ public class CxScanResult implements Action {
     private boolean isThresholdForNewResultExceeded = false;
 
     private File pdfReport;
+    private DeferredPdfReport deferredPdfReport;
     public static final String PDF_REPORT_NAME = "ScanReport.pdf";
+    // How long a viewer waits for a deferred PDF report before getting a page that refreshes itself.
+    private static final long PDF_REPORT_WAIT_SECONDS = 10;
     
     public static final String SCA_PDF_REPORT_NAME = "ScaPdfReport.pdf";
+    private static final String LEGACY_HTML_REPORT_NAME = "report.html";
     private boolean osaSuccessful; //osa fails flag for jelly
 
     private String htmlReportName;
@@ -175,17 +185,11 @@ public class CxScanResult implements Action {
         return descriptor != null && (!descriptor.isAsyncHtmlRemoval() || !this.scanRanAsynchronous );
     }
 
- // Check if neither the current report nor the older report is found	
+ // Check if neither the current report nor the older report is found
 	public boolean isEmptyReportAsync() {
-		try {
-			String htmlReport = getHtmlReport();
-			return htmlReport == null || htmlReport.isEmpty()
-					|| htmlReport.equals("<h1>Checkmarx HTML report not found<h1>");
-		} catch (IOException e) {
-			e.printStackTrace();
-			return false;
-		}
-	}	 
+		File report = getHtmlReportFile();
+		return report == null || report.length() == 0;
+	}
 
     public boolean isOsaEnabled() {
         return osaEnabled;
@@ -230,7 +234,11 @@ public class CxScanResult implements Action {
     public boolean isPdfReportReady() {
         File buildDirectory = owner.getRootDir();
         pdfReport = new File(buildDirectory, "/checkmarx/" + PDF_REPORT_NAME);
-        return pdfReport.exists();
+        return pdfReport.exists() || deferredPdfReport != null;
+    }
+
+    void setDeferredPdfReport(DeferredPdfReport deferredPdfReport) {
+        this.deferredPdfReport = deferredPdfReport;
     }
 
     public String getPdfReportUrl() {
@@ -238,10 +246,13 @@ public class CxScanResult implements Action {
     }
 
     public void doPdfReport(StaplerRequest req, StaplerResponse rsp) throws IOException {
-        rsp.setContentType("application/pdf");
-        ServletOutputStream outputStream = rsp.getOutputStream();
         File buildDirectory = owner.getRootDir();
         File a = new File(buildDirectory, "/checkmarx/" + PDF_REPORT_NAME);
+        if (!a.exists() && !awaitDeferredPdfReport(a, rsp)) {
+            return;
+        }
+        rsp.setContentType("application/pdf");
+        ServletOutputStream outputStream = rsp.getOutputStream();
 
         IOUtils.copy(a, outputStream);
 
@@ -249,6 +260,34 @@ public class CxScanResult implements Action {
         outputStream.close();
     }
 
+    /**
+     * Waits a little for the deferred PDF report, or answers with a page that refreshes until it is ready.
+     *
+     * @return whether the report is ready to be sent
+     */
+    private boolean awaitDeferredPdfReport(File report, StaplerResponse rsp) throws IOException {
+        if (deferredPdfReport == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return false;
+        }
+        try {
+            deferredPdfReport.request(owner, report).get(PDF_REPORT_WAIT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            rsp.setStatus(HttpServletResponse.SC_ACCEPTED);
+            rsp.setHeader("Refresh", String.valueOf(PDF_REPORT_WAIT_SECONDS));
+            rsp.setContentType("text/html;charset=UTF-8");
+            rsp.getWriter().print("<html><body>The PDF report of scan " + deferredPdfReport.getScanId()
+                    + " is being generated, this page refreshes until it is ready.</body></html>");
+        } catch (ExecutionException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_GATEWAY, "Failed to generate the PDF report: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        return false;
+    }
+
 	public void doScaPdfReport(StaplerRequest req, StaplerResponse rsp) throws IOException {
 		rsp.setContentType("application/pdf");
 		ServletOutputStream outputStream = rsp.getOutputStream();
@@ -273,34 +312,88 @@ public class CxScanResult implements Action {
         return result + POSTFIX;
     }
 
-    public String getHtmlReport() throws IOException {
-        String htmlReport;
+    /**
+     * @return the HTML report of this result in the build directory, or null if it was not written
+     */
+    @Nullable
+    public File getHtmlReportFile() {
         File cxBuildDirectory = new File(owner.getRootDir(), "checkmarx");
+        File report;
+        if (htmlReportName != null) {
+            report = new File(cxBuildDirectory, htmlReportName);
+        } else {
+            //backward compatibility (up to version 8.80.0)
+            report = new File(cxBuildDirectory, LEGACY_HTML_REPORT_NAME);
+        }
+        return report.isFile() ? report : null;
+    }
+
+    public String getHtmlReport() throws IOException {
+        File report = getHtmlReportFile();
+        if (report == null) {
+            return "<h1>Checkmarx HTML report not found<h1>";
+        }
+        return htmlReportName == null ? fixLegacyHtmlReport(FileUtils.readFileToString(report, Charset.defaultCharset()))
+                : FileUtils.readFileToString(report, StandardCharsets.UTF_8);
+    }
+
+    public String getHtmlReportUrl() {
+        return "htmlReport?report=" + (htmlReportName != null ? htmlReportName : LEGACY_HTML_REPORT_NAME);
+    }
 
-        //backward compatibility (up to version 8.80.0)
-        if (htmlReportName == null) {
-            File oldReport = new File(cxBuildDirectory, "report.html");
-            if (oldReport.exists()) {
-                htmlReport = FileUtils.readFileToString(oldReport, Charset.defaultCharset());
-                Pattern patt = Pattern.compile("(<div[^>]*)(\\s*/>)");
-                Matcher mattcher = patt.matcher(htmlReport);
-                if (mattcher.find()) {
-                    htmlReport = mattcher.replaceAll("$1></div>");
+    /**
+     * Streams the HTML report to the browser. The report is served compressed when the browser supports it
+     * and is only sent again once it has changed.
+     */
+    public void doHtmlReport(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        // All results of a build share the same URL, the report parameter selects the one to show.
+        CxScanResult result = this;
+        String reportName = req.getParameter("report");
+        if (reportName != null) {
+            for (CxScanResult r : owner.getActions(CxScanResult.class)) {
+                if (reportName.equals(r.htmlReportName != null ? r.htmlReportName : LEGACY_HTML_REPORT_NAME)) {
+                    result = r;
+                    break;
                 }
-                return htmlReport;
             }
         }
 
-        Collection<File> files = FileUtils.listFiles(cxBuildDirectory, null, false);
+        File report = result.getHtmlReportFile();
+        if (report == null) {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = "\"" + report.lastModified() + "-" + report.length() + "\"";
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            rsp.setStatus(StaplerResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        rsp.setHeader("ETag", etag);
+        if (req.checkIfModified(report.lastModified(), rsp)) {
+            return;
+        }
 
-        for (File f : files) {
-            if (htmlReportName != null && htmlReportName.equals(f.getName())) {
-                htmlReport = FileUtils.readFileToString(f, Charset.defaultCharset());
-                return htmlReport;
+        rsp.setContentType("text/html;charset=UTF-8");
+        try (OutputStream out = rsp.getCompressedOutputStream(req)) {
+            if (result.htmlReportName == null) {
+                // Legacy reports were written on the controller in its default charset.
+                out.write(fixLegacyHtmlReport(FileUtils.readFileToString(report, Charset.defaultCharset()))
+                        .getBytes(StandardCharsets.UTF_8));
+            } else {
+                Files.copy(report.toPath(), out);
             }
         }
+    }
 
-        return "<h1>Checkmarx HTML report not found<h1>";
+    // Reports up to version 8.80.0 contain self closing divs, which browsers do not close.
+    private static String fixLegacyHtmlReport(String htmlReport) {
+        Pattern patt = Pattern.compile("(<div[^>]*)(\\s*/>)");
+        Matcher mattcher = patt.matcher(htmlReport);
+        if (mattcher.find()) {
+            htmlReport = mattcher.replaceAll("$1></div>");
+        }
+        return htmlReport;
     }
 
     /**
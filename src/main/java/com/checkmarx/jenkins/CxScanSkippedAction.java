@@ -0,0 +1,29 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.InvisibleAction;
+
+/**
+ * Records that a build did not scan because its SCM changes contained nothing to scan. The build page shows the
+ * results of the last scanned build instead.
+ */
+public class CxScanSkippedAction extends InvisibleAction {
+
+    private final String reason;
+    private final int resultsBuild;
+
+    CxScanSkippedAction(String reason, int resultsBuild) {
+        this.reason = reason;
+        this.resultsBuild = resultsBuild;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return number of the build whose results were carried forward
+     */
+    public int getResultsBuild() {
+        return resultsBuild;
+    }
+}
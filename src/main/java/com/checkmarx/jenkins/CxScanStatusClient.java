@@ -0,0 +1,205 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.exception.CxClientException;
+import com.cx.restclient.sast.utils.LegacyClient;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lightweight CxSAST client that only reads the status of submitted scans. Used on the controller to wait for
+ * scans without holding an executor, results are retrieved once the scan has finished. Also retrieves the PDF
+ * reports that are generated on demand, see {@link DeferredPdfReport}.
+ */
+class CxScanStatusClient extends LegacyClient {
+
+    private static final String CONTENT_TYPE_API_V1 = "application/json;v=1.0";
+    private static final String SCAN_QUEUE = "sast/scansQueue";
+    private static final String SCAN_QUEUE_STATUS = "sast/scansQueue/{scanId}";
+    private static final String SCAN_STATUS = "sast/scans/{scanId}";
+    private static final String CANCEL_SCAN = "sast/scansQueue/{scanId}";
+    private static final String CONTENT_TYPE_PDF_V1 = "application/pdf;v=1.0";
+    private static final String CREATE_REPORT = "reports/sastScan";
+    private static final String REPORT_STATUS = "reports/sastScan/{reportId}/status";
+    private static final String REPORT = "reports/sastScan/{reportId}";
+    private static final long REPORT_POLL_MILLIS = 5000;
+
+    CxScanStatusClient(CxScanConfig config, Logger log) throws MalformedURLException, CxClientException {
+        super(config, log);
+    }
+
+    /**
+     * Reads the status of every queued and running scan visible to the logged in user with a single request.
+     * Scans that already ended are not part of the queue, use {@link #getScanStatus(long)} for those.
+     */
+    @SuppressWarnings("unchecked")
+    List<ScanStatus> getScanQueue() throws IOException {
+        List<QueueStatusResponse> queue = (List<QueueStatusResponse>) httpClient.getRequest(SCAN_QUEUE,
+                CONTENT_TYPE_API_V1, QueueStatusResponse.class, 200, "SAST scan queue", true);
+        List<ScanStatus> statuses = new ArrayList<>();
+        if (queue != null) {
+            for (QueueStatusResponse entry : queue) {
+                if (entry.id != null && entry.stage != null) {
+                    statuses.add(new ScanStatus(entry.id, entry.stage.value, entry.queuePosition, entry.totalPercent));
+                }
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Must be called on a logged in client.
+     */
+    ScanStatus getScanStatus(long scanId) throws IOException {
+        String id = String.valueOf(scanId);
+        try {
+            QueueStatusResponse queueStatus = httpClient.getRequest(SCAN_QUEUE_STATUS.replace("{scanId}", id),
+                    CONTENT_TYPE_API_V1, QueueStatusResponse.class, 200, "SAST scan queue status", false);
+            if (queueStatus != null && queueStatus.stage != null) {
+                return new ScanStatus(scanId, queueStatus.stage.value, queueStatus.queuePosition, queueStatus.totalPercent);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Scans are removed from the queue some time after they ended, fall back to the scan itself.
+        }
+        ScanResponse scan = httpClient.getRequest(SCAN_STATUS.replace("{scanId}", id),
+                CONTENT_TYPE_API_V1, ScanResponse.class, 200, "SAST scan status", false);
+        String stage = scan != null && scan.status != null ? scan.status.name : null;
+        return new ScanStatus(scanId, stage, null, null);
+    }
+
+    /**
+     * Cancels a queued or running scan. Must be called on a logged in client.
+     */
+    void cancelScan(long scanId) throws IOException {
+        StringEntity request = new StringEntity("{\"status\":\"Canceled\"}", ContentType.APPLICATION_JSON);
+        httpClient.patchRequest(CANCEL_SCAN.replace("{scanId}", String.valueOf(scanId)), CONTENT_TYPE_API_V1, request,
+                200, "cancel scan " + scanId);
+    }
+
+    /**
+     * Generates the PDF report of a finished scan and downloads it. Must be called on a logged in client.
+     *
+     * @param timeoutMillis how long to wait for the server to generate the report
+     */
+    byte[] getPdfReport(long scanId, long timeoutMillis) throws IOException, InterruptedException {
+        StringEntity request = new StringEntity("{\"reportType\":\"PDF\",\"scanId\":" + scanId + "}",
+                ContentType.APPLICATION_JSON);
+        CreateReportResponse created = httpClient.postRequest(CREATE_REPORT, CONTENT_TYPE_API_V1, request,
+                CreateReportResponse.class, 202, "create PDF report of scan " + scanId);
+        String reportId = String.valueOf(created.reportId);
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            ReportStatusResponse status = httpClient.getRequest(REPORT_STATUS.replace("{reportId}", reportId),
+                    CONTENT_TYPE_API_V1, ReportStatusResponse.class, 200, "PDF report status", false);
+            String value = status != null && status.status != null ? status.status.value : null;
+            if ("Created".equalsIgnoreCase(value)) {
+                break;
+            }
+            if ("Failed".equalsIgnoreCase(value)) {
+                throw new IOException("Generation of the PDF report of scan " + scanId + " failed.");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("PDF report of scan " + scanId + " was not generated in time.");
+            }
+            Thread.sleep(REPORT_POLL_MILLIS);
+        }
+        return httpClient.getRequest(REPORT.replace("{reportId}", reportId), CONTENT_TYPE_PDF_V1, byte[].class,
+                200, "PDF report of scan " + scanId, false);
+    }
+
+    /**
+     * Status of a single scan as reported by the server.
+     */
+    static final class ScanStatus implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long scanId;
+        private final String stage;
+        private final Integer queuePosition;
+        private final Integer totalPercent;
+
+        ScanStatus(long scanId, String stage, Integer queuePosition, Integer totalPercent) {
+            this.scanId = scanId;
+            this.stage = stage;
+            this.queuePosition = queuePosition;
+            this.totalPercent = totalPercent;
+        }
+
+        long getScanId() {
+            return scanId;
+        }
+
+        String getStage() {
+            return stage;
+        }
+
+        Integer getQueuePosition() {
+            return queuePosition;
+        }
+
+        Integer getTotalPercent() {
+            return totalPercent;
+        }
+
+        boolean isQueued() {
+            return "New".equalsIgnoreCase(stage) || "Queued".equalsIgnoreCase(stage)
+                    || "SourcePullingAndDeployment".equalsIgnoreCase(stage);
+        }
+
+        boolean isDone() {
+            return "Finished".equalsIgnoreCase(stage) || "Failed".equalsIgnoreCase(stage)
+                    || "Canceled".equalsIgnoreCase(stage) || "Deleted".equalsIgnoreCase(stage);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("scan ").append(scanId).append(": ").append(stage);
+            if (queuePosition != null && isQueued()) {
+                sb.append(", queue position ").append(queuePosition);
+            }
+            if (totalPercent != null && !isDone()) {
+                sb.append(", ").append(totalPercent).append('%');
+            }
+            return sb.toString();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class QueueStatusResponse {
+        public Long id;
+        public NamedValue stage;
+        public Integer queuePosition;
+        public Integer totalPercent;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ScanResponse {
+        public NamedValue status;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class CreateReportResponse {
+        public Long reportId;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ReportStatusResponse {
+        public NamedValue status;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class NamedValue {
+        public Integer id;
+        public String value;
+        public String name;
+    }
+}
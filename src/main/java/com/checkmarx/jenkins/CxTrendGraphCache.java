@@ -0,0 +1,77 @@
+package com.checkmarx.jenkins;
+
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered trend graphs of {@link CxProjectResult}, shared by the PNG and the clickable map requests.
+ * <p>
+ * A graph is rendered once per job, size and link prefix, and only rendered again once the trend index
+ * of the job has changed, i.e. when a new scan result was recorded or a build was deleted.
+ */
+class CxTrendGraphCache {
+
+    private static final int MAX_ENTRIES = 64;
+
+    interface ChartSupplier {
+        JFreeChart create();
+    }
+
+    // Access ordered, the least recently viewed graph is dropped first.
+    private final Map<String, Slot> slots = new LinkedHashMap<String, Slot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * @param key     identifies the job, size and link prefix of the graph
+     * @param version version of the data the graph is drawn from, a different version renders the graph again
+     */
+    Graph get(String key, String version, int width, int height, ChartSupplier factory) throws IOException {
+        Slot slot;
+        synchronized (slots) {
+            slot = slots.computeIfAbsent(key, k -> new Slot());
+        }
+        // Concurrent requests for the same graph wait for a single rendering.
+        synchronized (slot) {
+            if (slot.graph == null || !version.equals(slot.graph.version)) {
+                ChartRenderingInfo info = new ChartRenderingInfo();
+                BufferedImage image = factory.create().createBufferedImage(width, height, info);
+                slot.graph = new Graph(version, ChartUtilities.encodeAsPNG(image), ChartUtilities.getImageMap("map", info));
+            }
+            return slot.graph;
+        }
+    }
+
+    private static final class Slot {
+        private Graph graph;
+    }
+
+    static final class Graph {
+        private final String version;
+        private final byte[] png;
+        private final String imageMap;
+
+        private Graph(String version, byte[] png, String imageMap) {
+            this.version = version;
+            this.png = png;
+            this.imageMap = imageMap;
+        }
+
+        byte[] getPng() {
+            return png;
+        }
+
+        String getImageMap() {
+            return imageMap;
+        }
+    }
+}
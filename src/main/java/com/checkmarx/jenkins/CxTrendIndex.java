@@ -0,0 +1,212 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per job index of the SAST vulnerability counts, used to draw the trend graph of {@link CxProjectResult}
+ * without loading the build records of every historical build.
+ * <p>
+ * The index is an append-only text file in the job directory, one line per build:
+ * {@code <build number>,<critical>,<high>,<medium>,<low>}.
+ */
+public final class CxTrendIndex {
+
+    static final String FILE_NAME = "checkmarx-trend.csv";
+    static final int DEFAULT_WINDOW = 100;
+    // Builds loaded by the back-fill, most builds of a job may have no Checkmarx results.
+    private static final int BACKFILL_BUILDS = 2 * DEFAULT_WINDOW;
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+    // One lock per index file, builds of different jobs update and back-fill their indexes in parallel.
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private CxTrendIndex() {
+    }
+
+    /**
+     * Adds the SAST counts of the given build to the index of its job.
+     * Jobs created before the index existed are back-filled from their recent builds first.
+     */
+    static void record(Run<?, ?> run, int critical, int high, int medium, int low) {
+        File file = getFile(run.getParent());
+        synchronized (lockOf(file)) {
+            try {
+                if (!file.exists()) {
+                    backfill(file, run.getPreviousBuild());
+                }
+                append(file, Collections.singletonList(new Entry(run.getNumber(), critical, high, medium, low)));
+            } catch (IOException e) {
+                serverLog.warn("Failed to update Checkmarx trend index of " + run.getParent().getFullName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the entries of the most recent {@code window} builds, oldest first
+     */
+    static List<Entry> read(Job<?, ?> job, int window) {
+        File file = getFile(job);
+        synchronized (lockOf(file)) {
+            try {
+                if (!file.exists()) {
+                    Run<?, ?> last = job.getLastCompletedBuild();
+                    if (last == null) {
+                        return Collections.emptyList();
+                    }
+                    backfill(file, last);
+                }
+                List<Entry> entries = load(file);
+                return entries.subList(Math.max(0, entries.size() - window), entries.size());
+            } catch (IOException e) {
+                serverLog.warn("Failed to read Checkmarx trend index of " + job.getFullName() + ": " + e.getMessage());
+                return Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * @return a value that changes whenever the index of the given job is updated
+     */
+    static String getVersion(Job<?, ?> job) {
+        File file = getFile(job);
+        return file.lastModified() + ":" + file.length();
+    }
+
+    static void remove(Run<?, ?> run) {
+        File file = getFile(run.getParent());
+        synchronized (lockOf(file)) {
+            if (!file.exists()) {
+                return;
+            }
+            try {
+                List<Entry> entries = load(file);
+                if (entries.removeIf(entry -> entry.number == run.getNumber())) {
+                    File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+                    Files.deleteIfExists(tmp.toPath());
+                    append(tmp, entries);
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                serverLog.warn("Failed to update Checkmarx trend index of " + run.getParent().getFullName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static File getFile(Job<?, ?> job) {
+        return new File(job.getRootDir(), FILE_NAME);
+    }
+
+    // Keyed by the index file rather than the job name, a renamed job moves its index along with its directory.
+    private static Object lockOf(File file) {
+        return LOCKS.computeIfAbsent(file.getAbsolutePath(), path -> new Object());
+    }
+
+    // One-time migration: walks back from the given build, bounded by the builds walked and the default window.
+    private static void backfill(File file, Run<?, ?> from) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        int walked = 0;
+        for (Run<?, ?> b = from; b != null && walked < BACKFILL_BUILDS && entries.size() < DEFAULT_WINDOW;
+             b = b.getPreviousBuild(), walked++) {
+            CxScanResult result = b.getAction(CxScanResult.class);
+            if (result != null && !Boolean.FALSE.equals(result.getSastEnabled()) && !result.isScanRanAsynchronous()) {
+                entries.add(new Entry(b.getNumber(), result.getCriticalCount(), result.getHighCount(),
+                        result.getMediumCount(), result.getLowCount()));
+            }
+        }
+        Collections.reverse(entries);
+        append(file, entries);
+    }
+
+    private static void append(File file, List<Entry> entries) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Entry entry : entries) {
+                writer.write(entry.number + "," + entry.critical + "," + entry.high + "," + entry.medium + "," + entry.low);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static List<Entry> load(File file) throws IOException {
+        // A build scanned more than once keeps its last counts.
+        TreeMap<Integer, Entry> entries = new TreeMap<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] parts = line.split(",");
+            if (parts.length != 5) {
+                continue;
+            }
+            try {
+                Entry entry = new Entry(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+                entries.put(entry.number, entry);
+            } catch (NumberFormatException e) {
+                // Partially written line, skip it.
+            }
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * SAST counts of a single build. Also used as the column key of the trend graph.
+     */
+    static final class Entry implements Comparable<Entry> {
+        final int number;
+        final int critical;
+        final int high;
+        final int medium;
+        final int low;
+
+        Entry(int number, int critical, int high, int medium, int low) {
+            this.number = number;
+            this.critical = critical;
+            this.high = high;
+            this.medium = medium;
+            this.low = low;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Integer.compare(number, other.number);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && ((Entry) o).number == number;
+        }
+
+        @Override
+        public int hashCode() {
+            return number;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + number;
+        }
+    }
+
+    @Extension
+    public static class DeletedBuildListener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            remove(run);
+        }
+    }
+}
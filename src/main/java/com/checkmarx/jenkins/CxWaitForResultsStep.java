@@ -0,0 +1,235 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline step that waits for a scan submitted by the Checkmarx build step with deferred results, then retrieves
+ * and processes its results (thresholds, reports and build page results) on the controller.
+ * <p>
+ * The step does not need a node, when used outside of a {@code node} block no executor is held while CxSAST
+ * is scanning. The scan status is followed by the shared {@link ScanStatusPoller} and the wait is resumed
+ * after a controller restart. The SAST scan timeout of the build step counts from the submission, the scan is
+ * canceled once it expires.
+ */
+public class CxWaitForResultsStep extends Step {
+
+    @DataBoundConstructor
+    public CxWaitForResultsStep() {
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new Execution(context);
+    }
+
+    @Extension(optional = true)
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return new HashSet<>(Arrays.asList(Run.class, TaskListener.class));
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "checkmarxWaitForResults";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Wait for Checkmarx scan results";
+        }
+    }
+
+    static class Execution extends StepExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        // Recreated after a controller restart.
+        private transient volatile ScanStatusPoller.Waiter waiter;
+        private transient CxScanConfig config;
+        private transient volatile String lastStatus;
+        private transient volatile ScheduledFuture<?> deadline;
+        private transient volatile boolean stopped;
+
+        Execution(StepContext context) {
+            super(context);
+        }
+
+        @Override
+        public boolean start() {
+            // Resolving the configuration may log in to the server.
+            Computer.threadPoolForRemoting.submit(this::await);
+            return false;
+        }
+
+        @Override
+        public void onResume() {
+            Computer.threadPoolForRemoting.submit(this::await);
+        }
+
+        @Override
+        public void stop(Throwable cause) {
+            stopped = true;
+            // A null waiter is not registered yet, await cancels it once it is.
+            ScanStatusPoller.Waiter current = waiter;
+            if (current != null) {
+                current.cancel();
+                cancelScan();
+            }
+            cancelDeadline();
+            getContext().onFailure(cause);
+        }
+
+        private void cancelDeadline() {
+            ScheduledFuture<?> current = deadline;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+        private void cancelScan() {
+            CxScanConfig scanConfig = config;
+            Computer.threadPoolForRemoting.submit(() -> {
+                try {
+                    Run<?, ?> run = getContext().get(Run.class);
+                    TaskListener listener = getContext().get(TaskListener.class);
+                    CxPendingScanAction pending = findPending(run);
+                    if (scanConfig != null && pending != null) {
+                        pending.getBuilder().cancelAbortedScan(scanConfig, pending.getScanId(),
+                                new CxLoggerAdapter(listener.getLogger()));
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // The build is gone, nothing to report the cancellation to.
+                }
+            });
+        }
+
+        @Override
+        public String getStatus() {
+            return lastStatus != null ? "Checkmarx " + lastStatus : "waiting for Checkmarx scan";
+        }
+
+        private void await() {
+            try {
+                Run<?, ?> run = getContext().get(Run.class);
+                TaskListener listener = getContext().get(TaskListener.class);
+                CxPendingScanAction pending = findPending(run);
+                if (pending == null) {
+                    getContext().onFailure(new AbortException("No pending Checkmarx scan found in this build. " +
+                            "Run the Checkmarx build step with deferResults enabled before checkmarxWaitForResults."));
+                    return;
+                }
+
+                if (stopped) {
+                    return;
+                }
+                CxScanConfig scanConfig = getConfig(run, listener, pending);
+                ScanStatusPoller.Waiter current = ScanStatusPoller.getInstance().await(ScanStatusPoller.keyOf(scanConfig),
+                        pending.getScanId(), () -> pending.getBuilder().createStatusClient(scanConfig),
+                        status -> {
+                            lastStatus = status.toString();
+                            listener.getLogger().println("Checkmarx " + lastStatus);
+                        });
+                waiter = current;
+                if (stopped) {
+                    // Stopped while the waiter was registered.
+                    current.cancel();
+                    cancelScan();
+                    return;
+                }
+                scheduleDeadline(scanConfig, pending, current, listener);
+                current.getFuture().whenComplete((status, error) -> {
+                    cancelDeadline();
+                    if (error instanceof CancellationException) {
+                        // Stopped or timed out, the context was already notified.
+                        return;
+                    }
+                    if (error != null) {
+                        getContext().onFailure(error);
+                    } else if (!"Finished".equalsIgnoreCase(status.getStage())) {
+                        getContext().onFailure(new AbortException("Checkmarx scan " + pending.getScanId() +
+                                " ended with status " + status.getStage()));
+                    } else {
+                        // Retrieving and processing results takes a while, keep it off the timer threads.
+                        Computer.threadPoolForRemoting.submit(() -> process(run, listener, pending));
+                    }
+                });
+            } catch (Exception e) {
+                getContext().onFailure(e);
+            }
+        }
+
+        /**
+         * Cancels the scan once the SAST scan timeout of the build step has passed since its submission.
+         */
+        private void scheduleDeadline(CxScanConfig scanConfig, CxPendingScanAction pending,
+                                      ScanStatusPoller.Waiter current, TaskListener listener) {
+            Integer timeout = scanConfig.getSastScanTimeoutInMinutes();
+            if (timeout == null || timeout <= 0) {
+                return;
+            }
+            long start = pending.getSubmittedAt() > 0 ? pending.getSubmittedAt() : System.currentTimeMillis();
+            long remaining = Math.max(0, start + TimeUnit.MINUTES.toMillis(timeout) - System.currentTimeMillis());
+            deadline = Timer.get().schedule(() -> {
+                if (current.getFuture().isDone()) {
+                    return;
+                }
+                current.cancel();
+                listener.getLogger().println("Checkmarx scan " + pending.getScanId() + " did not finish within "
+                        + timeout + " minutes.");
+                cancelScan();
+                getContext().onFailure(new AbortException("Checkmarx scan " + pending.getScanId()
+                        + " did not finish within " + timeout + " minutes."));
+            }, remaining, TimeUnit.MILLISECONDS);
+        }
+
+        private void process(Run<?, ?> run, TaskListener listener, CxPendingScanAction pending) {
+            try {
+                pending.getBuilder().processDeferredScan(run, listener, getConfig(run, listener, pending), pending);
+                getContext().onSuccess(null);
+            } catch (Exception e) {
+                // The results stay pending unless processing started, a later wait can retry e.g. a login failure.
+                getContext().onFailure(e);
+            }
+        }
+
+        private CxScanConfig getConfig(Run<?, ?> run, TaskListener listener, CxPendingScanAction pending)
+                throws IOException, InterruptedException {
+            if (config == null) {
+                config = pending.getBuilder().resolveDeferredConfiguration(run, listener);
+            }
+            return config;
+        }
+
+        private static CxPendingScanAction findPending(Run<?, ?> run) {
+            List<CxPendingScanAction> actions = run.getActions(CxPendingScanAction.class);
+            for (int i = actions.size() - 1; i >= 0; i--) {
+                if (!actions.get(i).isProcessed()) {
+                    return actions.get(i);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.checkmarx.jenkins;
+
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import hudson.model.Computer;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SAST PDF report of a build that is generated when it is first opened, instead of during the scan.
+ * <p>
+ * Saved with the {@link CxScanResult} of the build. The report is generated on the server and downloaded in the
+ * background, then kept in the build directory for later viewers. Concurrent requests share one download.
+ * <p>
+ * Only the server, the credentials id and the scan id are saved, credentials are looked up when the report is
+ * requested.
+ */
+public class DeferredPdfReport {
+
+    private static final long GENERATION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+    // Downloads in progress or failed, by target file. Guarded by itself.
+    private static final Map<String, CompletableFuture<Void>> DOWNLOADS = new HashMap<>();
+
+    private final String serverUrl;
+    // Null when the scan used the username and password of the global configuration.
+    private final String credentialsId;
+    private final boolean proxy;
+    private final long scanId;
+
+    DeferredPdfReport(String serverUrl, String credentialsId, boolean proxy, long scanId) {
+        this.serverUrl = serverUrl;
+        this.credentialsId = credentialsId;
+        this.proxy = proxy;
+        this.scanId = scanId;
+    }
+
+    public long getScanId() {
+        return scanId;
+    }
+
+    /**
+     * Starts the download of the report unless it is already running. A failed download is retried.
+     *
+     * @return the download, completed exceptionally if it failed
+     */
+    CompletableFuture<Void> request(Run<?, ?> run, File target) {
+        synchronized (DOWNLOADS) {
+            CompletableFuture<Void> download = DOWNLOADS.get(target.getPath());
+            if (download != null && (!download.isDone() || !download.isCompletedExceptionally())) {
+                return download;
+            }
+            CompletableFuture<Void> started = CompletableFuture.runAsync(() -> download(run, target),
+                    Computer.threadPoolForRemoting);
+            DOWNLOADS.put(target.getPath(), started);
+            started.thenRun(() -> {
+                synchronized (DOWNLOADS) {
+                    DOWNLOADS.remove(target.getPath(), started);
+                }
+            });
+            return started;
+        }
+    }
+
+    private void download(Run<?, ?> run, File target) {
+        long start = System.currentTimeMillis();
+        try {
+            CxScanBuilder.DescriptorImpl descriptor = Jenkins.get().getDescriptorByType(CxScanBuilder.DescriptorImpl.class);
+            byte[] pdf;
+            CxScanStatusClient client = CommonClientFactory.getStatusClient(resolveConnection(run, descriptor),
+                    descriptor.isEnableCertificateValidation(), serverLog);
+            try {
+                client.login();
+                pdf = client.getPdfReport(scanId, GENERATION_TIMEOUT_MILLIS);
+            } finally {
+                client.close();
+            }
+            File tmp = new File(target.getPath() + ".tmp");
+            Files.createDirectories(target.getParentFile().toPath());
+            Files.write(tmp.toPath(), pdf);
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            serverLog.info("PDF report of scan " + scanId + " for " + run.getFullDisplayName() + " downloaded in "
+                    + (System.currentTimeMillis() - start) + " ms.");
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            serverLog.warn("Failed to download PDF report of scan " + scanId + " for " + run.getFullDisplayName()
+                    + ": " + e.getMessage());
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private CxConnectionDetails resolveConnection(Run<?, ?> run, CxScanBuilder.DescriptorImpl descriptor)
+            throws IOException {
+        CxConnectionDetails connDetails = new CxConnectionDetails();
+        connDetails.setServerUrl(serverUrl);
+        connDetails.setProxy(proxy);
+        if (StringUtils.isNotEmpty(credentialsId)) {
+            UsernamePasswordCredentials credentials = CxConnectionDetails.getCredentialsById(credentialsId, run);
+            if (credentials == null) {
+                throw new IOException("Credentials " + credentialsId + " are not available.");
+            }
+            connDetails.setUsername(credentials.getUsername());
+            connDetails.setPassword(Aes.encrypt(credentials.getPassword().getPlainText(), credentials.getUsername()));
+        } else if (serverUrl.equals(StringUtils.trim(descriptor.getServerUrl()))) {
+            connDetails.setUsername(StringUtils.defaultString(descriptor.getUsername()));
+            connDetails.setPassword(Aes.encrypt(StringUtils.defaultString(descriptor.getPasswordPlainText()),
+                    connDetails.getUsername()));
+        } else {
+            throw new IOException("Server " + serverUrl + " is no longer the global Checkmarx server.");
+        }
+        return connDetails;
+    }
+}
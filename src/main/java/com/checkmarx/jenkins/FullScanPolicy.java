@@ -0,0 +1,146 @@
+package com.checkmarx.jenkins;
+
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.scm.ChangeLogSet;
+import jenkins.scm.RunWithSCM;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether an incremental job runs a full scan, from what changed since its last full scan rather than
+ * from the build number.
+ * <p>
+ * The state of each job is kept in {@value #FILE_NAME} in the job directory: the time of the last full scan,
+ * the incremental scans since then and the commits and files changed since then, taken from the SCM changesets
+ * of the builds. A full scan is due when any of the configured limits is reached. The state is seeded by the
+ * first build that uses the policy.
+ */
+final class FullScanPolicy {
+
+    static final String FILE_NAME = "checkmarx-full-scan-policy.xml";
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    private final int scanCycle;
+    private final int maxChangedFiles;
+    private final int maxDays;
+
+    /**
+     * @param scanCycle       incremental scans between full scans, 0 for no limit
+     * @param maxChangedFiles changed files that trigger a full scan, 0 for no limit
+     * @param maxDays         days after which a full scan is due, 0 for no limit
+     */
+    FullScanPolicy(int scanCycle, int maxChangedFiles, int maxDays) {
+        this.scanCycle = scanCycle;
+        this.maxChangedFiles = maxChangedFiles;
+        this.maxDays = maxDays;
+    }
+
+    /**
+     * Adds the changes of the build to the state of its job and decides the scan type.
+     *
+     * @return why a full scan is due, null if the scan can be incremental
+     */
+    String fullScanReason(Run<?, ?> run) {
+        synchronized (FullScanPolicy.class) {
+            State state = load(run.getParent());
+            if (state.lastFullScan == 0) {
+                // First use of the policy, the limits count from now on. The server runs a full scan anyway
+                // when the project has none.
+                state.lastFullScan = System.currentTimeMillis();
+                state.lastCountedBuild = run.getNumber();
+                save(run.getParent(), state);
+                return null;
+            }
+            if (run.getNumber() > state.lastCountedBuild) {
+                countChanges(run, state);
+                state.lastCountedBuild = run.getNumber();
+                save(run.getParent(), state);
+            }
+
+            if (scanCycle > 0 && state.incrementalScans >= scanCycle) {
+                return state.incrementalScans + " incremental scans since the last full scan";
+            }
+            if (maxChangedFiles > 0 && state.changedFiles >= maxChangedFiles) {
+                return state.changedFiles + " files changed in " + state.commits + " commits since the last full scan";
+            }
+            long days = TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis() - state.lastFullScan);
+            if (maxDays > 0 && days >= maxDays) {
+                return days + " days since the last full scan";
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Records a scan that was submitted successfully. A full scan resets the state of the job.
+     */
+    static void recordScan(Job<?, ?> job, boolean full) {
+        synchronized (FullScanPolicy.class) {
+            State state = load(job);
+            if (full) {
+                state.lastFullScan = System.currentTimeMillis();
+                state.incrementalScans = 0;
+                state.commits = 0;
+                state.changedFiles = 0;
+            } else {
+                state.incrementalScans++;
+            }
+            save(job, state);
+        }
+    }
+
+    private static void countChanges(Run<?, ?> run, State state) {
+        if (!(run instanceof RunWithSCM)) {
+            return;
+        }
+        Set<String> paths = new HashSet<>();
+        for (ChangeLogSet<? extends ChangeLogSet.Entry> changeSet : ((RunWithSCM<?, ?>) run).getChangeSets()) {
+            for (ChangeLogSet.Entry entry : changeSet) {
+                state.commits++;
+                for (ChangeLogSet.AffectedFile file : entry.getAffectedFiles()) {
+                    paths.add(file.getPath());
+                }
+            }
+        }
+        state.changedFiles += paths.size();
+    }
+
+    private static State load(Job<?, ?> job) {
+        XmlFile file = getFile(job);
+        if (file.exists()) {
+            try {
+                return (State) file.read();
+            } catch (IOException | ClassCastException e) {
+                serverLog.warn("Failed to read Checkmarx full scan state of " + job.getFullName() + ": " + e.getMessage());
+            }
+        }
+        return new State();
+    }
+
+    private static void save(Job<?, ?> job, State state) {
+        try {
+            getFile(job).write(state);
+        } catch (IOException e) {
+            serverLog.warn("Failed to save Checkmarx full scan state of " + job.getFullName() + ": " + e.getMessage());
+        }
+    }
+
+    private static XmlFile getFile(Job<?, ?> job) {
+        return new XmlFile(new File(job.getRootDir(), FILE_NAME));
+    }
+
+    private static final class State {
+        private long lastFullScan;
+        private int incrementalScans;
+        private int commits;
+        private int changedFiles;
+        private int lastCountedBuild;
+    }
+}
@@ -0,0 +1,18 @@
+package com.checkmarx.jenkins;
+
+/**
+ * Layout of the JSON reports of dependency scans written to the workspace.
+ */
+public enum JsonReportFormat {
+	PRETTY("Pretty printed"), COMPACT("Compact"), GZIP("Compact, gzip compressed (.json.gz)");
+
+	private final String displayName;
+
+	JsonReportFormat(String displayName) {
+		this.displayName = displayName;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+}
@@ -0,0 +1,39 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes JSON reports straight to a {@link ReportSink}, without building the whole document in memory first.
+ * The writers are thread safe and shared by all reports.
+ */
+final class JsonReportWriter {
+
+    private static final ObjectWriter PRETTY = new ObjectMapper().writerWithDefaultPrettyPrinter();
+    private static final ObjectWriter COMPACT = new ObjectMapper().writer();
+
+    private JsonReportWriter() {
+    }
+
+    /**
+     * @param fileName name of the report, {@code .gz} is appended for {@link JsonReportFormat#GZIP}
+     * @return name of the written report
+     */
+    static String write(ReportSink sink, String fileName, Object content, JsonReportFormat format) throws IOException {
+        if (format == JsonReportFormat.GZIP) {
+            String gzipName = fileName + ".gz";
+            try (OutputStream out = new GZIPOutputStream(sink.open(gzipName))) {
+                COMPACT.writeValue(out, content);
+            }
+            return gzipName;
+        }
+        try (OutputStream out = sink.open(fileName)) {
+            (format == JsonReportFormat.COMPACT ? COMPACT : PRETTY).writeValue(out, content);
+        }
+        return fileName;
+    }
+}
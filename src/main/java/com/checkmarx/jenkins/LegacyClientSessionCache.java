@@ -0,0 +1,233 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.sast.utils.LegacyClient;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of logged in {@link LegacyClient} sessions, keyed by server and credentials.
+ * <p>
+ * Used by the drop-down lists of the job configuration page, which are populated by several concurrent requests.
+ * Requests for the same server and credentials share a single login, a session is renewed before its access
+ * token expires and is closed after it has been idle for a while.
+ */
+class LegacyClientSessionCache {
+
+    static final int MAX_SESSIONS = 16;
+    static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // CxSAST access tokens are valid for one hour by default, renew the session well before that.
+    static final long MAX_SESSION_AGE_MILLIS = TimeUnit.MINUTES.toMillis(45);
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    // Access ordered, the eldest entry is the least recently used session.
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(MAX_SESSIONS, 0.75f, true);
+
+    interface ClientFactory {
+        /**
+         * @return a new client that is already logged in
+         */
+        LegacyClient create() throws Exception;
+    }
+
+    interface ClientCall<T> {
+        T call(LegacyClient client) throws Exception;
+    }
+
+    /**
+     * Runs the given call with a logged in client for the given key. If the call fails on a reused session,
+     * the session is discarded and the call is retried once with a fresh login.
+     */
+    <T> T execute(String key, ClientFactory factory, ClientCall<T> call) throws Exception {
+        Session session = acquire(key, factory);
+        try {
+            return call.call(session.getClient());
+        } catch (Exception e) {
+            if (!session.reused) {
+                throw e;
+            }
+            serverLog.debug("Cached Checkmarx session failed, logging in again: " + e.getMessage());
+            invalidate(key, session);
+        } finally {
+            release(session);
+        }
+
+        session = acquire(key, factory);
+        try {
+            return call.call(session.getClient());
+        } finally {
+            release(session);
+        }
+    }
+
+    /**
+     * Closes and removes all sessions.
+     */
+    void clear() {
+        List<Session> retired;
+        synchronized (this) {
+            retired = new ArrayList<>(sessions.values());
+            sessions.clear();
+        }
+        for (Session session : retired) {
+            session.retire();
+        }
+    }
+
+    static String keyOf(CxConnectionDetails connDetails, boolean enableCertificateValidation) {
+        return connDetails.getServerUrl() + '|' + connDetails.getUsername() + '|' + sha256(connDetails.getPassword())
+                + '|' + connDetails.isProxy() + '|' + enableCertificateValidation;
+    }
+
+    private Session acquire(String key, ClientFactory factory) throws Exception {
+        Session session;
+        boolean created = false;
+        List<Session> retired = new ArrayList<>();
+        synchronized (this) {
+            evictStale(retired);
+            session = sessions.get(key);
+            if (session == null) {
+                session = new Session(factory);
+                sessions.put(key, session);
+                created = true;
+                evictOverflow(retired);
+            } else {
+                session.reused = true;
+            }
+            session.users++;
+        }
+        for (Session stale : retired) {
+            stale.retire();
+        }
+
+        if (created) {
+            // Login happens outside of the lock, concurrent requests for the same key wait on the same login.
+            session.login.run();
+        }
+        try {
+            session.getClient();
+            return session;
+        } catch (Exception e) {
+            invalidate(key, session);
+            release(session);
+            throw e;
+        }
+    }
+
+    private void release(Session session) {
+        boolean close;
+        synchronized (this) {
+            session.users--;
+            session.lastUsed = System.currentTimeMillis();
+            close = session.retired && session.users == 0;
+        }
+        if (close) {
+            session.close();
+        }
+    }
+
+    private void invalidate(String key, Session session) {
+        synchronized (this) {
+            if (sessions.get(key) == session) {
+                sessions.remove(key);
+            }
+        }
+        session.retire();
+    }
+
+    private void evictStale(List<Session> retired) {
+        long now = System.currentTimeMillis();
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            Session session = it.next();
+            // Sessions close to token expiry are no longer handed out, sessions still in use are closed on release.
+            if (now - session.created > MAX_SESSION_AGE_MILLIS
+                    || (session.users == 0 && now - session.lastUsed > IDLE_TIMEOUT_MILLIS)) {
+                it.remove();
+                retired.add(session);
+            }
+        }
+    }
+
+    private void evictOverflow(List<Session> retired) {
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext() && sessions.size() > MAX_SESSIONS; ) {
+            retired.add(it.next());
+            it.remove();
+        }
+    }
+
+    static String sha256(String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final class Session {
+        private final FutureTask<LegacyClient> login;
+        private final long created = System.currentTimeMillis();
+        // Guarded by the enclosing cache.
+        private long lastUsed = created;
+        private int users;
+        private boolean reused;
+        private boolean retired;
+
+        private Session(ClientFactory factory) {
+            this.login = new FutureTask<>(factory::create);
+        }
+
+        private LegacyClient getClient() throws Exception {
+            try {
+                return login.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            } catch (CancellationException e) {
+                throw new IllegalStateException("Checkmarx login was cancelled", e);
+            }
+        }
+
+        private void retire() {
+            boolean close;
+            synchronized (LegacyClientSessionCache.this) {
+                retired = true;
+                close = users == 0;
+            }
+            if (close) {
+                close();
+            }
+        }
+
+        private void close() {
+            if (!login.isDone()) {
+                return;
+            }
+            try {
+                LegacyClient client = login.get();
+                if (client != null) {
+                    client.close();
+                }
+            } catch (Exception ignored) {
+                // Login failed, nothing to close.
+            }
+        }
+    }
+}
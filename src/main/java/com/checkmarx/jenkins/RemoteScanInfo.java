@@ -2,7 +2,10 @@ package com.checkmarx.jenkins;
 
 import com.cx.restclient.dto.ScanResults;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Scan results and additional configuration info that are obtained during the execution of a Jenkins build,
@@ -10,19 +13,58 @@ import java.io.Serializable;
  */
 public class RemoteScanInfo implements Serializable {
     private ScanResults scanResults;
+    // Compact form of scanResults, set on the scanning node when the results are sent to the controller.
+    private byte[] scanResultsPayload;
     private String cxARMUrl;
     private String version;
     private String hotFix;
     private String enginePackVersion;
+    private long admissionWaitMillis;
+    private int admissionQueueDepth;
+    private String sastXmlReportPath;
+    private String htmlReportName;
+    private List<String> buildPageReports = new ArrayList<>();
+    private List<String> workspaceReports = new ArrayList<>();
+    private long submittedScanId;
+    private String submittedScanHandle;
+    private String sourceDigest;
+    private long reusedScanId;
 
     public void setScanResults(ScanResults scanResults) {
         this.scanResults = scanResults;
+        this.scanResultsPayload = null;
     }
 
     public ScanResults getScanResults() {
+        if (scanResults == null && scanResultsPayload != null) {
+            try {
+                scanResults = ScanResultsTransport.unpack(scanResultsPayload);
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException("Failed to read the Checkmarx scan results sent by the agent", e);
+            }
+            scanResultsPayload = null;
+        }
         return scanResults;
     }
 
+    /**
+     * Replaces the scan results by their compact form, see {@link ScanResultsTransport}.
+     *
+     * @return size of the compact form in bytes
+     */
+    int pack() throws IOException {
+        scanResultsPayload = ScanResultsTransport.pack(scanResults);
+        scanResults = null;
+        return scanResultsPayload.length;
+    }
+
+    /**
+     * @return whether the scan results are still in their compact form
+     */
+    boolean isPacked() {
+        return scanResultsPayload != null;
+    }
+
     public void setCxARMUrl(String cxARMUrl) {
         this.cxARMUrl = cxARMUrl;
     }
@@ -54,4 +96,106 @@ public class RemoteScanInfo implements Serializable {
     public String getEnginePackVersion() {
         return enginePackVersion;
     }
+
+    public void setAdmissionWaitMillis(long admissionWaitMillis) {
+        this.admissionWaitMillis = admissionWaitMillis;
+    }
+
+    public long getAdmissionWaitMillis() {
+        return admissionWaitMillis;
+    }
+
+    public void setAdmissionQueueDepth(int admissionQueueDepth) {
+        this.admissionQueueDepth = admissionQueueDepth;
+    }
+
+    public int getAdmissionQueueDepth() {
+        return admissionQueueDepth;
+    }
+
+    /**
+     * @return absolute path of the SAST XML report in the workspace of the node that ran the scan,
+     * or null if no report was written
+     */
+    public String getSastXmlReportPath() {
+        return sastXmlReportPath;
+    }
+
+    public void setSastXmlReportPath(String sastXmlReportPath) {
+        this.sastXmlReportPath = sastXmlReportPath;
+    }
+
+    public String getHtmlReportName() {
+        return htmlReportName;
+    }
+
+    public void setHtmlReportName(String htmlReportName) {
+        this.htmlReportName = htmlReportName;
+    }
+
+    /**
+     * @return names of the reports in the workspace reports folder that should be copied to the build directory
+     */
+    public List<String> getBuildPageReports() {
+        return buildPageReports;
+    }
+
+    public void setBuildPageReports(List<String> buildPageReports) {
+        this.buildPageReports = buildPageReports;
+    }
+
+    /**
+     * @return names of all the reports this scan wrote to the workspace reports folder
+     */
+    public List<String> getWorkspaceReports() {
+        return workspaceReports;
+    }
+
+    public void setWorkspaceReports(List<String> workspaceReports) {
+        this.workspaceReports = workspaceReports;
+    }
+
+    /**
+     * @return id of the SAST scan submitted without waiting for its results, 0 if none was submitted
+     */
+    public long getSubmittedScanId() {
+        return submittedScanId;
+    }
+
+    public void setSubmittedScanId(long submittedScanId) {
+        this.submittedScanId = submittedScanId;
+    }
+
+    /**
+     * @return handle of the submitted scans kept on the node that submitted them, null if they were not kept
+     */
+    public String getSubmittedScanHandle() {
+        return submittedScanHandle;
+    }
+
+    public void setSubmittedScanHandle(String submittedScanHandle) {
+        this.submittedScanHandle = submittedScanHandle;
+    }
+
+    /**
+     * @return digest of the scanned sources, null if it was not computed
+     */
+    public String getSourceDigest() {
+        return sourceDigest;
+    }
+
+    public void setSourceDigest(String sourceDigest) {
+        this.sourceDigest = sourceDigest;
+    }
+
+    /**
+     * @return id of the previous scan whose results were used because the sources did not change, 0 otherwise
+     */
+    public long getReusedScanId() {
+        return reusedScanId;
+    }
+
+    public void setReusedScanId(long reusedScanId) {
+        this.reusedScanId = reusedScanId;
+    }
 }
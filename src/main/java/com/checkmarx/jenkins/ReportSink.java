@@ -0,0 +1,32 @@
+package com.checkmarx.jenkins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination of the reports produced by a scan.
+ * <p>
+ * Reports are written once, on the node that holds the scan results. Consumers on other nodes receive
+ * only the names of the written reports and fetch the ones they need.
+ */
+interface ReportSink {
+
+    String REPORTS_FOLDER = "Checkmarx/Reports";
+
+    void write(String fileName, byte[] content) throws IOException;
+
+    /**
+     * Writes a text report in UTF-8.
+     */
+    void write(String fileName, String content) throws IOException;
+
+    /**
+     * Opens a report for streamed writing, the caller closes the stream.
+     */
+    OutputStream open(String fileName) throws IOException;
+
+    /**
+     * @return absolute location of the given report, as seen by the node that wrote it
+     */
+    String getLocation(String fileName);
+}
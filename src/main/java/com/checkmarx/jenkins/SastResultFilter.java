@@ -0,0 +1,285 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.sast.dto.CxXMLResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Filters the SAST results on the node that ran the scan, before reports are written and the results are sent
+ * to the controller.
+ * <p>
+ * The results are filtered in place, in a single pass. Each result goes through the stages in order and is
+ * dropped by the first stage that rejects it, stages that reject a whole query drop all of its results at once.
+ * Queries left without results are removed. The number of results dropped by each stage is logged once.
+ * <p>
+ * Only the result details are filtered, the vulnerability counts used by thresholds are the totals of the server.
+ */
+final class SastResultFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Results marked Not Exploitable were always dropped, keep that unless the job says otherwise.
+    static final String DEFAULT_EXCLUDED_STATES = "1";
+
+    interface Stage extends Serializable {
+        String getName();
+
+        default boolean acceptQuery(CxXMLResults.Query query) {
+            return true;
+        }
+
+        default boolean acceptResult(CxXMLResults.Query query, CxXMLResults.Query.Result result) {
+            return true;
+        }
+    }
+
+    private final List<Stage> stages;
+
+    private SastResultFilter(List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * @return the filter of jobs without filter settings, it only drops Not Exploitable results
+     */
+    static SastResultFilter defaults() {
+        Settings settings = new Settings();
+        settings.setStates(DEFAULT_EXCLUDED_STATES);
+        return of(settings);
+    }
+
+    static SastResultFilter of(Settings settings) {
+        List<Stage> stages = new ArrayList<>();
+        Set<String> states = split(settings.getStates());
+        if (!states.isEmpty()) {
+            stages.add(new StateStage(states));
+        }
+        Set<String> severities = split(settings.getSeverities());
+        if (!severities.isEmpty()) {
+            stages.add(new SeverityStage(severities));
+        }
+        Set<String> queries = split(settings.getQueries());
+        if (!queries.isEmpty()) {
+            stages.add(new QueryNameStage(queries));
+        }
+        List<String> paths = new ArrayList<>();
+        for (String path : StringUtils.split(StringUtils.defaultString(settings.getPaths()), ",\n")) {
+            if (StringUtils.isNotBlank(path)) {
+                paths.add(path.trim().replace('\\', '/'));
+            }
+        }
+        if (!paths.isEmpty()) {
+            stages.add(new PathStage(paths));
+        }
+        return new SastResultFilter(stages);
+    }
+
+    void apply(SASTResults sast, CxLoggerAdapter log) {
+        if (sast == null || sast.getQueryList() == null) {
+            return;
+        }
+        long[] dropped = new long[stages.size()];
+        int emptyQueries = 0;
+        for (Iterator<CxXMLResults.Query> queries = sast.getQueryList().iterator(); queries.hasNext(); ) {
+            CxXMLResults.Query query = queries.next();
+            List<CxXMLResults.Query.Result> results = query.getResult();
+            if (results != null && !results.isEmpty()) {
+                filterQuery(query, results, dropped);
+            }
+            if (results == null || results.isEmpty()) {
+                queries.remove();
+                emptyQueries++;
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < stages.size(); i++) {
+            if (dropped[i] > 0) {
+                summary.append(summary.length() == 0 ? "" : ", ").append(stages.get(i).getName()).append(": ").append(dropped[i]);
+            }
+        }
+        if (summary.length() > 0) {
+            log.info("SAST results dropped by filter (" + summary + ").");
+        }
+        if (emptyQueries > 0) {
+            log.info("Skipped " + emptyQueries + " SAST queries without results.");
+        }
+    }
+
+    private void filterQuery(CxXMLResults.Query query, List<CxXMLResults.Query.Result> results, long[] dropped) {
+        for (int i = 0; i < stages.size(); i++) {
+            if (!stages.get(i).acceptQuery(query)) {
+                dropped[i] += results.size();
+                results.clear();
+                return;
+            }
+        }
+        results.removeIf(result -> {
+            for (int i = 0; i < stages.size(); i++) {
+                if (!stages.get(i).acceptResult(query, result)) {
+                    dropped[i]++;
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private static Set<String> split(String value) {
+        Set<String> values = new HashSet<>();
+        for (String item : StringUtils.split(StringUtils.defaultString(value), ",\n")) {
+            if (StringUtils.isNotBlank(item)) {
+                values.add(item.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return values;
+    }
+
+    private static final class StateStage implements Stage {
+        private final Set<String> states;
+
+        private StateStage(Set<String> states) {
+            this.states = states;
+        }
+
+        @Override
+        public String getName() {
+            return "state";
+        }
+
+        @Override
+        public boolean acceptResult(CxXMLResults.Query query, CxXMLResults.Query.Result result) {
+            return !states.contains(String.valueOf(result.getState()));
+        }
+    }
+
+    private static final class SeverityStage implements Stage {
+        private final Set<String> severities;
+
+        private SeverityStage(Set<String> severities) {
+            this.severities = severities;
+        }
+
+        @Override
+        public String getName() {
+            return "severity";
+        }
+
+        @Override
+        public boolean acceptQuery(CxXMLResults.Query query) {
+            return query.getSeverity() == null || !severities.contains(query.getSeverity().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static final class QueryNameStage implements Stage {
+        private final Set<String> names;
+
+        private QueryNameStage(Set<String> names) {
+            this.names = names;
+        }
+
+        @Override
+        public String getName() {
+            return "query";
+        }
+
+        @Override
+        public boolean acceptQuery(CxXMLResults.Query query) {
+            return query.getName() == null || !names.contains(query.getName().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static final class PathStage implements Stage {
+        private final List<String> patterns;
+
+        private PathStage(List<String> patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public String getName() {
+            return "path";
+        }
+
+        @Override
+        public boolean acceptResult(CxXMLResults.Query query, CxXMLResults.Query.Result result) {
+            if (result.getFileName() == null) {
+                return true;
+            }
+            String fileName = result.getFileName().replace('\\', '/');
+            for (String pattern : patterns) {
+                if (SelectorUtils.matchPath(pattern, fileName, false)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Filter values of a job, each a comma or line separated list. Also read from the {@code resultFilters}
+     * section of the config as code file.
+     */
+    public static class Settings implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String states;
+        private String severities;
+        private String queries;
+        private String paths;
+
+        /**
+         * @return result state ids to drop, e.g. 1 for Not Exploitable
+         */
+        public String getStates() {
+            return states;
+        }
+
+        public void setStates(String states) {
+            this.states = states;
+        }
+
+        /**
+         * @return query severities to drop, e.g. Low, Information
+         */
+        public String getSeverities() {
+            return severities;
+        }
+
+        public void setSeverities(String severities) {
+            this.severities = severities;
+        }
+
+        /**
+         * @return names of the queries to drop
+         */
+        public String getQueries() {
+            return queries;
+        }
+
+        public void setQueries(String queries) {
+            this.queries = queries;
+        }
+
+        /**
+         * @return wildcard patterns of the file paths to drop, e.g. **&#47;test/**
+         */
+        public String getPaths() {
+            return paths;
+        }
+
+        public void setPaths(String paths) {
+            this.paths = paths;
+        }
+    }
+}
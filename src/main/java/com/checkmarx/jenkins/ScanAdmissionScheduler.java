@@ -0,0 +1,309 @@
+package com.checkmarx.jenkins;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for the scan submission phase of {@link CxScanCallable}.
+ * <p>
+ * There is one scheduler per JVM, i.e. one per Jenkins agent. Scans are admitted through two independent lanes:
+ * <ul>
+ * <li>{@link Lane#DEPENDENCY} - CxOSA scans. The FSA component reads its settings from JVM-wide system properties
+ * and logs through the root JUL logger, so only one such scan may run at a time.</li>
+ * <li>{@link Lane#SAST_SCA} - SAST and CxSCA submissions, limited by the configured number of concurrent scans
+ * per agent.</li>
+ * </ul>
+ * Both lanes are fair across jobs: waiting builds are queued per job and the jobs are admitted in turn, so a job
+ * that queues many builds does not hold back the builds of other jobs. Builds of the same job are admitted in
+ * arrival order.
+ * <p>
+ * The controller additionally aggregates the admission wait times reported back by the agents, these are shown
+ * on the global configuration page.
+ */
+final class ScanAdmissionScheduler {
+
+    static final int DEFAULT_MAX_CONCURRENT_SCANS = 1;
+
+    private static final ScanAdmissionScheduler INSTANCE = new ScanAdmissionScheduler();
+
+    // Controller side only: admission statistics per node, fed from RemoteScanInfo.
+    private static final Map<String, NodeStatistics> NODE_STATISTICS = new TreeMap<>();
+
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+
+    enum Lane {
+        DEPENDENCY("OSA dependency scan"),
+        SAST_SCA("SAST/SCA scan");
+
+        private final String displayName;
+
+        Lane(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private ScanAdmissionScheduler() {
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneState(DEFAULT_MAX_CONCURRENT_SCANS));
+        }
+    }
+
+    static ScanAdmissionScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Blocks until the given lane admits one more scan.
+     *
+     * @param lane    the lane to enter
+     * @param permits the number of scans the lane may run concurrently on this agent
+     * @param jobName full name of the job of the build, builds are queued per job
+     * @param log     build console logger used to report the time spent in queue
+     * @return a ticket that must be passed to {@link #release(List)} once the submission phase is over
+     */
+    Ticket admit(Lane lane, int permits, String jobName, CxLoggerAdapter log) throws InterruptedException {
+        LaneState state = lanes.get(lane);
+        state.resize(lane == Lane.DEPENDENCY ? 1 : Math.max(1, permits));
+
+        long start = System.nanoTime();
+        Waiter waiter = state.enqueue(jobName);
+        int queueDepth = waiter.queueDepth;
+        if (!waiter.admitted) {
+            log.info("Waiting for a free " + lane.getDisplayName() + " slot on this agent (" +
+                    queueDepth + " build(s) ahead, limit " + state.getPermits() + ").");
+            state.await(jobName, waiter);
+        }
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        if (queueDepth > 0 || waitMillis >= 1000) {
+            log.info(lane.getDisplayName() + " admitted after " + formatMillis(waitMillis) + " in queue.");
+        } else {
+            log.debug(lane.getDisplayName() + " admitted without waiting.");
+        }
+        return new Ticket(lane, waitMillis, queueDepth);
+    }
+
+    /**
+     * Releases the given tickets in reverse order of admission.
+     */
+    void release(List<Ticket> tickets) {
+        for (int i = tickets.size() - 1; i >= 0; i--) {
+            Ticket ticket = tickets.get(i);
+            lanes.get(ticket.lane).release();
+        }
+    }
+
+    static synchronized void recordAdmission(String nodeName, long waitMillis, int queueDepth) {
+        NodeStatistics stats = NODE_STATISTICS.get(nodeName);
+        if (stats == null) {
+            stats = new NodeStatistics(nodeName);
+            NODE_STATISTICS.put(nodeName, stats);
+        }
+        stats.record(waitMillis, queueDepth);
+    }
+
+    static synchronized List<NodeStatistics> getNodeStatistics() {
+        List<NodeStatistics> copy = new ArrayList<>();
+        for (NodeStatistics stats : NODE_STATISTICS.values()) {
+            copy.add(stats.copy());
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    static String formatMillis(long millis) {
+        return millis < 1000 ? millis + " ms" : String.format("%.1f s", millis / 1000.0);
+    }
+
+    static final class Ticket {
+        private final Lane lane;
+        private final long waitMillis;
+        private final int queueDepth;
+
+        private Ticket(Lane lane, long waitMillis, int queueDepth) {
+            this.lane = lane;
+            this.waitMillis = waitMillis;
+            this.queueDepth = queueDepth;
+        }
+
+        long getWaitMillis() {
+            return waitMillis;
+        }
+
+        int getQueueDepth() {
+            return queueDepth;
+        }
+    }
+
+    private static final class Waiter {
+        // Builds waiting in the lane when this one arrived.
+        private final int queueDepth;
+        private boolean admitted;
+
+        private Waiter(int queueDepth) {
+            this.queueDepth = queueDepth;
+        }
+    }
+
+    private static final class LaneState {
+        // Waiting builds by job, in the order the jobs take turns. Guarded by this.
+        private final Map<String, ArrayDeque<Waiter>> queues = new LinkedHashMap<>();
+        private int waiting;
+        private int active;
+        private int permits;
+
+        private LaneState(int permits) {
+            this.permits = permits;
+        }
+
+        private synchronized int getPermits() {
+            return permits;
+        }
+
+        /**
+         * Admits the build right away when a slot is free and nobody waits, otherwise queues it with its job.
+         */
+        private synchronized Waiter enqueue(String jobName) {
+            Waiter waiter = new Waiter(waiting);
+            if (waiting == 0 && active < permits) {
+                waiter.admitted = true;
+                active++;
+                return waiter;
+            }
+            queues.computeIfAbsent(jobName, k -> new ArrayDeque<>()).add(waiter);
+            waiting++;
+            return waiter;
+        }
+
+        private synchronized void await(String jobName, Waiter waiter) throws InterruptedException {
+            try {
+                while (!waiter.admitted) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    release();
+                } else {
+                    ArrayDeque<Waiter> queue = queues.get(jobName);
+                    if (queue != null && queue.remove(waiter)) {
+                        waiting--;
+                        if (queue.isEmpty()) {
+                            queues.remove(jobName);
+                        }
+                    }
+                }
+                throw e;
+            }
+        }
+
+        private synchronized void release() {
+            active--;
+            admitWaiting();
+        }
+
+        /**
+         * Applies a changed limit from the global configuration. Scans already admitted keep their slot,
+         * a lowered limit only takes effect as they finish.
+         */
+        private synchronized void resize(int newPermits) {
+            permits = newPermits;
+            admitWaiting();
+        }
+
+        // Admits the first build of the job whose turn it is, the job then goes to the end of the line.
+        private void admitWaiting() {
+            boolean admitted = false;
+            while (active < permits && !queues.isEmpty()) {
+                Iterator<Map.Entry<String, ArrayDeque<Waiter>>> jobs = queues.entrySet().iterator();
+                Map.Entry<String, ArrayDeque<Waiter>> next = jobs.next();
+                jobs.remove();
+                next.getValue().poll().admitted = true;
+                if (!next.getValue().isEmpty()) {
+                    queues.put(next.getKey(), next.getValue());
+                }
+                waiting--;
+                active++;
+                admitted = true;
+            }
+            if (admitted) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Admission statistics of a single node, as displayed on the global configuration page.
+     */
+    public static final class NodeStatistics {
+        private final String nodeName;
+        private long admissions;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+        private long lastWaitMillis;
+        private int maxQueueDepth;
+        private int lastQueueDepth;
+
+        private NodeStatistics(String nodeName) {
+            this.nodeName = nodeName;
+        }
+
+        private void record(long waitMillis, int queueDepth) {
+            admissions++;
+            totalWaitMillis += waitMillis;
+            maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+            lastWaitMillis = waitMillis;
+            maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+            lastQueueDepth = queueDepth;
+        }
+
+        private NodeStatistics copy() {
+            NodeStatistics copy = new NodeStatistics(nodeName);
+            copy.admissions = admissions;
+            copy.totalWaitMillis = totalWaitMillis;
+            copy.maxWaitMillis = maxWaitMillis;
+            copy.lastWaitMillis = lastWaitMillis;
+            copy.maxQueueDepth = maxQueueDepth;
+            copy.lastQueueDepth = lastQueueDepth;
+            return copy;
+        }
+
+        public String getNodeName() {
+            return nodeName;
+        }
+
+        public long getAdmissions() {
+            return admissions;
+        }
+
+        public String getAverageWait() {
+            return formatMillis(admissions == 0 ? 0 : totalWaitMillis / admissions);
+        }
+
+        public String getMaxWait() {
+            return formatMillis(maxWaitMillis);
+        }
+
+        public String getLastWait() {
+            return formatMillis(lastWaitMillis);
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public int getLastQueueDepth() {
+            return lastQueueDepth;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.checkmarx.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single flight of identical scans: builds that scan the same commit of the same project with the same settings
+ * at the same time share one scan.
+ * <p>
+ * The first build runs the scan, the others wait for it. Each waiting build gets its own copy of the results,
+ * so it applies its own thresholds, the build page reports of the scanning build and its workspace reports.
+ */
+final class ScanCoalescer {
+
+    // Flights in progress, by scan key. Guarded by itself.
+    private static final Map<String, Flight> FLIGHTS = new HashMap<>();
+
+    private ScanCoalescer() {
+    }
+
+    /**
+     * @param key server, project, commit and scan settings
+     * @return the flight of the key, led by the calling build if none was in progress
+     */
+    static Flight join(String key, String buildName) {
+        synchronized (FLIGHTS) {
+            Flight flight = FLIGHTS.get(key);
+            if (flight != null) {
+                return new Flight(key, flight.leaderName, flight.outcome, false);
+            }
+            flight = new Flight(key, buildName, new CompletableFuture<>(), true);
+            FLIGHTS.put(key, flight);
+            return flight;
+        }
+    }
+
+    static final class Flight {
+        private final String key;
+        private final String leaderName;
+        private final CompletableFuture<Outcome> outcome;
+        private final boolean leader;
+        private byte[] snapshot;
+
+        private Flight(String key, String leaderName, CompletableFuture<Outcome> outcome, boolean leader) {
+            this.key = key;
+            this.leaderName = leaderName;
+            this.outcome = outcome;
+            this.leader = leader;
+        }
+
+        boolean isLeader() {
+            return leader;
+        }
+
+        String getLeaderName() {
+            return leaderName;
+        }
+
+        /**
+         * Keeps a copy of the results of the leading build, before the build processes them.
+         *
+         * @param snapshot serialized {@link RemoteScanInfo}
+         */
+        void prepare(byte[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Publishes the prepared results to the waiting builds, called once the leading build is done with the scan.
+         * Waiting builds get no results if none were prepared.
+         *
+         * @param reportsDir directory of the build page reports of the leading build, and of the copy of its
+         *                   workspace reports
+         */
+        void complete(File reportsDir) {
+            synchronized (FLIGHTS) {
+                FLIGHTS.remove(key, this);
+            }
+            outcome.complete(snapshot != null ? new Outcome(snapshot, reportsDir) : null);
+        }
+
+        /**
+         * Waits for the leading build.
+         *
+         * @param timeoutMinutes 0 or less to wait until the leading build is done
+         * @return the results, null if the leading build did not produce any
+         */
+        Outcome await(long timeoutMinutes) throws InterruptedException, ExecutionException, TimeoutException {
+            return timeoutMinutes > 0 ? outcome.get(timeoutMinutes, TimeUnit.MINUTES) : outcome.get();
+        }
+    }
+
+    static final class Outcome {
+        private final byte[] snapshot;
+        private final File reportsDir;
+
+        private Outcome(byte[] snapshot, File reportsDir) {
+            this.snapshot = snapshot;
+            this.reportsDir = reportsDir;
+        }
+
+        /**
+         * @return a copy of the results that the caller may change
+         */
+        RemoteScanInfo newScanInfo() throws IOException, ClassNotFoundException {
+            return (RemoteScanInfo) ScanResultsTransport.deserialize(snapshot);
+        }
+
+        File getReportsDir() {
+            return reportsDir;
+        }
+    }
+}
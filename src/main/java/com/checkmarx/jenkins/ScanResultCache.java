@@ -0,0 +1,149 @@
+package com.checkmarx.jenkins;
+
+import jenkins.model.Jenkins;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Results of finished scans by commit and scan settings, so rebuilds and replays of a commit that was already
+ * scanned reuse the results instead of scanning it again.
+ * <p>
+ * Kept on the controller in {@value #DIR_NAME} of the Jenkins home directory, one folder per entry with the
+ * serialized results, the build page reports and the copy of the workspace reports. The least recently used
+ * entries are dropped once the cache grows over its size limit.
+ */
+final class ScanResultCache {
+
+    static final String DIR_NAME = "checkmarx-result-cache";
+    // Copy of the workspace reports of the scan, next to the build page reports.
+    static final String WORKSPACE_REPORTS_DIR = "workspace-reports";
+    private static final String RESULTS_FILE = "results.bin";
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    private ScanResultCache() {
+    }
+
+    /**
+     * Copies the reports of a cached entry to the given directory.
+     *
+     * @return a copy of the cached results, null if the key is not cached
+     */
+    static synchronized RemoteScanInfo get(String key, File reportsDir) {
+        File entry = new File(getDir(), key);
+        try {
+            RemoteScanInfo scanInfo = read(entry, reportsDir);
+            if (scanInfo != null) {
+                // Last use orders the entries for eviction.
+                entry.setLastModified(System.currentTimeMillis());
+            }
+            return scanInfo;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            serverLog.warn("Failed to read cached Checkmarx scan results, dropping them: " + e.getMessage());
+            FileUtils.deleteQuietly(entry);
+            return null;
+        }
+    }
+
+    /**
+     * @param snapshot   serialized {@link RemoteScanInfo} of the scan, its build page reports are cached with it
+     * @param reportsDir directory holding the build page reports
+     * @param maxBytes   size limit of the whole cache
+     */
+    static synchronized void put(String key, byte[] snapshot, File reportsDir, long maxBytes) {
+        File dir = getDir();
+        try {
+            write(new File(dir, key), snapshot, reportsDir);
+        } catch (IOException | ClassNotFoundException e) {
+            serverLog.warn("Failed to cache Checkmarx scan results: " + e.getMessage());
+            return;
+        }
+        evict(dir, maxBytes);
+    }
+
+    /**
+     * Reads the results saved in an entry directory and copies their reports to the given directory.
+     *
+     * @return the results, null if the entry does not exist
+     */
+    static RemoteScanInfo read(File entry, File reportsDir) throws IOException, ClassNotFoundException {
+        File results = new File(entry, RESULTS_FILE);
+        if (!results.isFile()) {
+            return null;
+        }
+        RemoteScanInfo scanInfo = (RemoteScanInfo) ScanResultsTransport.deserialize(Files.readAllBytes(results.toPath()));
+        for (String report : scanInfo.getBuildPageReports()) {
+            File source = new File(entry, report);
+            if (source.isFile()) {
+                FileUtils.copyFileToDirectory(source, reportsDir);
+            }
+        }
+        File workspaceReports = new File(entry, WORKSPACE_REPORTS_DIR);
+        if (workspaceReports.isDirectory()) {
+            FileUtils.copyDirectory(workspaceReports, new File(reportsDir, WORKSPACE_REPORTS_DIR));
+        }
+        return scanInfo;
+    }
+
+    /**
+     * Saves results with their reports to an entry directory, replacing it if it exists.
+     */
+    static void write(File entry, byte[] snapshot, File reportsDir) throws IOException, ClassNotFoundException {
+        File tmp = new File(entry.getPath() + ".tmp");
+        try {
+            FileUtils.deleteQuietly(tmp);
+            Files.createDirectories(tmp.toPath());
+            Files.write(new File(tmp, RESULTS_FILE).toPath(), snapshot);
+            RemoteScanInfo scanInfo = (RemoteScanInfo) ScanResultsTransport.deserialize(snapshot);
+            for (String report : scanInfo.getBuildPageReports()) {
+                File source = new File(reportsDir, report);
+                if (source.isFile()) {
+                    FileUtils.copyFileToDirectory(source, tmp);
+                }
+            }
+            File workspaceReports = new File(reportsDir, WORKSPACE_REPORTS_DIR);
+            if (workspaceReports.isDirectory()) {
+                FileUtils.copyDirectory(workspaceReports, new File(tmp, WORKSPACE_REPORTS_DIR));
+            }
+            FileUtils.deleteQuietly(entry);
+            Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * Drops the least recently used entries of the cache directory until it fits the size limit.
+     */
+    static void evict(File dir, long maxBytes) {
+        File[] entries = dir.listFiles(File::isDirectory);
+        if (entries == null) {
+            return;
+        }
+        List<File> byLastUse = new ArrayList<>(Arrays.asList(entries));
+        byLastUse.sort(Comparator.comparingLong(File::lastModified));
+        long total = 0;
+        List<Long> sizes = new ArrayList<>();
+        for (File entry : byLastUse) {
+            long size = FileUtils.sizeOfDirectory(entry);
+            sizes.add(size);
+            total += size;
+        }
+        for (int i = 0; i < byLastUse.size() && total > maxBytes; i++) {
+            FileUtils.deleteQuietly(byLastUse.get(i));
+            total -= sizes.get(i);
+        }
+    }
+
+    private static File getDir() {
+        return new File(Jenkins.get().getRootDir(), DIR_NAME);
+    }
+}
@@ -0,0 +1,104 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.ast.dto.sca.AstScaResults;
+import com.cx.restclient.dto.ScanResults;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import hudson.remoting.ClassFilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact form of the {@link ScanResults} sent by the node that ran the scan back to the controller.
+ * <p>
+ * Reports are written on the scanning node, the controller only needs counts, summaries and errors. The details
+ * used by the reports (SAST queries, dependency libraries and findings) are dropped, and the rest is serialized
+ * once and compressed instead of sending the whole object graph through the remoting channel.
+ */
+final class ScanResultsTransport {
+
+    private ScanResultsTransport() {
+    }
+
+    /**
+     * Drops the result details that are only needed to write reports.
+     */
+    static void stripDetails(ScanResults results) {
+        SASTResults sast = results.getSastResults();
+        if (sast != null) {
+            sast.setQueryList(new ArrayList<>());
+        }
+        AstScaResults sca = results.getScaResults();
+        if (sca != null) {
+            sca.setPackages(new ArrayList<>());
+            sca.setFindings(new ArrayList<>());
+        }
+        OSAResults osa = results.getOsaResults();
+        if (osa != null) {
+            osa.setOsaLibraries(new ArrayList<>());
+            osa.setOsaVulnerabilities(new ArrayList<>());
+        }
+    }
+
+    static byte[] pack(ScanResults results) throws IOException {
+        return serialize(results);
+    }
+
+    static ScanResults unpack(byte[] payload) throws IOException, ClassNotFoundException {
+        return (ScanResults) deserialize(payload);
+    }
+
+    /**
+     * Compressed serialized form of an object, e.g. to keep an immutable snapshot of it.
+     */
+    static byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new FilteredObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(payload)))) {
+            return in.readObject();
+        }
+    }
+
+    // The payload comes from an agent, apply the same class filter as the remoting channel it bypasses.
+    private static final class FilteredObjectInputStream extends ObjectInputStream {
+
+        private FilteredObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (ClassFilter.DEFAULT.isBlacklisted(name)) {
+                throw new InvalidClassException(name, "Rejected by the remoting class filter");
+            }
+            Class<?> type;
+            try {
+                type = Class.forName(name, false, ScanResultsTransport.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                type = super.resolveClass(desc);
+            }
+            if (ClassFilter.DEFAULT.isBlacklisted(type)) {
+                throw new InvalidClassException(name, "Rejected by the remoting class filter");
+            }
+            return type;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller wide poller of CxSAST scan status, shared by all builds waiting for a scan.
+ * <p>
+ * There is one polling task per server and user. Each round reads the whole scan queue with a single request,
+ * only scans that left the queue are looked up individually, so the load on the server grows with the number
+ * of servers rather than with the number of waiting builds. Builds waiting for the same scan share its checks.
+ * <p>
+ * The interval adapts to the most advanced scan: scans deep in the queue are checked rarely, scans close to
+ * completion often, and the interval grows while nothing changes.
+ */
+final class ScanStatusPoller {
+
+    static final long MIN_DELAY_SECONDS = 10;
+    static final long MAX_DELAY_SECONDS = 120;
+    private static final long SCANNING_DELAY_SECONDS = 30;
+    // After this many failed rounds in a row the waiting builds are released with the error.
+    private static final int MAX_CONSECUTIVE_ERRORS = 10;
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+    private static final ScanStatusPoller INSTANCE = new ScanStatusPoller();
+
+    private final Map<String, ServerPoller> servers = new HashMap<>();
+
+    interface ClientFactory {
+        /**
+         * @return a new client that is already logged in
+         */
+        CxScanStatusClient create() throws Exception;
+    }
+
+    interface ProgressListener {
+        void onStatus(CxScanStatusClient.ScanStatus status);
+    }
+
+    private ScanStatusPoller() {
+    }
+
+    static ScanStatusPoller getInstance() {
+        return INSTANCE;
+    }
+
+    static String keyOf(CxScanConfig config) {
+        return config.getUrl() + '|' + config.getUsername() + '|' + LegacyClientSessionCache.sha256(config.getPassword());
+    }
+
+    /**
+     * Registers a build waiting for the given scan.
+     *
+     * @param serverKey identifies the server and user the scan was submitted with, see {@link #keyOf(CxScanConfig)}
+     * @param factory   creates a client for the server, used whenever the poller needs to log in again
+     * @param listener  notified whenever the status of the scan changes
+     * @return a waiter whose future completes with the final status of the scan
+     */
+    Waiter await(String serverKey, long scanId, ClientFactory factory, ProgressListener listener) {
+        ServerPoller poller;
+        synchronized (servers) {
+            poller = servers.computeIfAbsent(serverKey, k -> new ServerPoller());
+        }
+        Waiter waiter = new Waiter(poller, scanId, listener);
+        poller.add(waiter, factory);
+        return waiter;
+    }
+
+    /**
+     * Polling interval for a single scan, based on its position in the queue and its progress.
+     */
+    static long delayFor(CxScanStatusClient.ScanStatus status) {
+        if (status.isQueued()) {
+            int position = status.getQueuePosition() == null ? 1 : Math.max(1, status.getQueuePosition());
+            return Math.min(MAX_DELAY_SECONDS, MIN_DELAY_SECONDS * position);
+        }
+        Integer percent = status.getTotalPercent();
+        if ((percent != null && percent >= 90) || "PostScan".equalsIgnoreCase(status.getStage())) {
+            return MIN_DELAY_SECONDS;
+        }
+        return SCANNING_DELAY_SECONDS;
+    }
+
+    /**
+     * A build waiting for a scan.
+     */
+    static final class Waiter {
+        private final ServerPoller poller;
+        private final long scanId;
+        private final ProgressListener listener;
+        private final CompletableFuture<CxScanStatusClient.ScanStatus> future = new CompletableFuture<>();
+
+        private Waiter(ServerPoller poller, long scanId, ProgressListener listener) {
+            this.poller = poller;
+            this.scanId = scanId;
+            this.listener = listener;
+        }
+
+        CompletableFuture<CxScanStatusClient.ScanStatus> getFuture() {
+            return future;
+        }
+
+        /**
+         * Stops waiting, e.g. when the build was aborted.
+         */
+        void cancel() {
+            poller.remove(this);
+            future.cancel(false);
+        }
+    }
+
+    private static final class ServerPoller {
+        // Guarded by this.
+        private final Map<Long, List<Waiter>> waiters = new HashMap<>();
+        private final Map<Long, String> lastStatus = new HashMap<>();
+        private ClientFactory factory;
+        private ScheduledFuture<?> task;
+        private int unchangedRounds;
+        private int errors;
+        // Only used by the polling task.
+        private CxScanStatusClient client;
+
+        private synchronized void add(Waiter waiter, ClientFactory factory) {
+            waiters.computeIfAbsent(waiter.scanId, id -> new ArrayList<>()).add(waiter);
+            this.factory = factory;
+            // A new build does not trigger an extra round, it is picked up by the next scheduled one.
+            if (task == null) {
+                task = Timer.get().schedule(this::poll, MIN_DELAY_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+
+        private synchronized void remove(Waiter waiter) {
+            List<Waiter> forScan = waiters.get(waiter.scanId);
+            if (forScan != null && forScan.remove(waiter) && forScan.isEmpty()) {
+                waiters.remove(waiter.scanId);
+                lastStatus.remove(waiter.scanId);
+            }
+        }
+
+        private void poll() {
+            List<Long> scanIds;
+            ClientFactory currentFactory;
+            synchronized (this) {
+                scanIds = new ArrayList<>(waiters.keySet());
+                currentFactory = factory;
+            }
+
+            Map<Long, CxScanStatusClient.ScanStatus> statuses = new HashMap<>();
+            Exception error = null;
+            if (!scanIds.isEmpty()) {
+                try {
+                    if (client == null) {
+                        client = currentFactory.create();
+                    }
+                    for (CxScanStatusClient.ScanStatus status : client.getScanQueue()) {
+                        statuses.put(status.getScanId(), status);
+                    }
+                    for (Long scanId : scanIds) {
+                        if (!statuses.containsKey(scanId)) {
+                            statuses.put(scanId, client.getScanStatus(scanId));
+                        }
+                    }
+                } catch (Exception e) {
+                    error = e;
+                    closeClient();
+                }
+            }
+            dispatch(scanIds, statuses, error);
+        }
+
+        private void dispatch(List<Long> scanIds, Map<Long, CxScanStatusClient.ScanStatus> statuses, Exception error) {
+            List<Runnable> notifications = new ArrayList<>();
+            synchronized (this) {
+                boolean changed = false;
+                long delay = MAX_DELAY_SECONDS;
+                if (error != null) {
+                    errors++;
+                    serverLog.warn("Failed to poll Checkmarx scan status (attempt " + errors + "): " + error.getMessage());
+                    if (errors >= MAX_CONSECUTIVE_ERRORS) {
+                        for (Long scanId : scanIds) {
+                            completeExceptionally(scanId, error, notifications);
+                        }
+                        errors = 0;
+                    }
+                    delay = Math.min(MAX_DELAY_SECONDS, MIN_DELAY_SECONDS << Math.min(errors, 4));
+                } else {
+                    errors = 0;
+                    for (Long scanId : scanIds) {
+                        CxScanStatusClient.ScanStatus status = statuses.get(scanId);
+                        if (status == null || !waiters.containsKey(scanId)) {
+                            continue;
+                        }
+                        if (!status.toString().equals(lastStatus.put(scanId, status.toString()))) {
+                            changed = true;
+                            for (Waiter waiter : waiters.get(scanId)) {
+                                notifications.add(() -> waiter.listener.onStatus(status));
+                            }
+                        }
+                        if (status.isDone()) {
+                            for (Waiter waiter : waiters.remove(scanId)) {
+                                notifications.add(() -> waiter.future.complete(status));
+                            }
+                            lastStatus.remove(scanId);
+                        } else {
+                            delay = Math.min(delay, delayFor(status));
+                        }
+                    }
+                    // Back off while nothing moves, up to twice the stage based interval.
+                    unchangedRounds = changed ? 0 : unchangedRounds + 1;
+                    delay = Math.min(MAX_DELAY_SECONDS, delay + delay * Math.min(unchangedRounds, 4) / 4);
+                }
+
+                if (waiters.isEmpty()) {
+                    task = null;
+                    unchangedRounds = 0;
+                    closeClient();
+                } else {
+                    task = Timer.get().schedule(this::poll, Math.max(MIN_DELAY_SECONDS, delay), TimeUnit.SECONDS);
+                }
+            }
+            // Listeners write to build logs, do not hold the lock while notifying them.
+            for (Runnable notification : notifications) {
+                try {
+                    notification.run();
+                } catch (RuntimeException e) {
+                    serverLog.warn("Failed to notify build of Checkmarx scan status: " + e.getMessage());
+                }
+            }
+        }
+
+        private void completeExceptionally(Long scanId, Exception error, List<Runnable> notifications) {
+            List<Waiter> forScan = waiters.remove(scanId);
+            lastStatus.remove(scanId);
+            if (forScan != null) {
+                for (Waiter waiter : forScan) {
+                    notifications.add(() -> waiter.future.completeExceptionally(error));
+                }
+            }
+        }
+
+        private void closeClient() {
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds scanning the same Checkmarx project with "latest wins" enabled. When a build starts, the scans of older
+ * builds of the project that are still queued on the server are stale: they are canceled and those builds end
+ * without results. Older builds that have not submitted their scan yet skip it.
+ */
+final class ScanSupersession {
+
+    // Builds of each project, oldest first. Guarded by itself.
+    private static final Map<String, List<Ticket>> ACTIVE = new HashMap<>();
+
+    private ScanSupersession() {
+    }
+
+    /**
+     * Registers a build that starts scanning the project.
+     *
+     * @param projectKey server, team and project, see {@link SourceDigestStore#keyOf(String, String, String)}
+     * @return the ticket of the build, closed once the build is done with the scan
+     */
+    static Ticket start(String projectKey, Run<?, ?> run) {
+        synchronized (ACTIVE) {
+            List<Ticket> builds = ACTIVE.computeIfAbsent(projectKey, k -> new ArrayList<>());
+            Ticket ticket = new Ticket(projectKey, run.getFullDisplayName(), new ArrayList<>(builds));
+            builds.add(ticket);
+            return ticket;
+        }
+    }
+
+    static final class Ticket implements AutoCloseable {
+        private final String projectKey;
+        private final String buildName;
+        private final List<Ticket> older;
+        private volatile long scanId;
+        private volatile String supersededBy;
+        // A newer build is canceling the scan, guarded by this.
+        private boolean canceling;
+
+        private Ticket(String projectKey, String buildName, List<Ticket> older) {
+            this.projectKey = projectKey;
+            this.buildName = buildName;
+            this.older = older;
+        }
+
+        /**
+         * @return builds of the same project that started before this one and are still running
+         */
+        List<Ticket> getOlder() {
+            List<Ticket> running = new ArrayList<>();
+            synchronized (ACTIVE) {
+                List<Ticket> builds = ACTIVE.get(projectKey);
+                for (Ticket ticket : older) {
+                    if (builds != null && builds.contains(ticket) && ticket.supersededBy == null) {
+                        running.add(ticket);
+                    }
+                }
+            }
+            return running;
+        }
+
+        long getScanId() {
+            return scanId;
+        }
+
+        /**
+         * Records the scan submitted by the build.
+         *
+         * @return false if the build was superseded before it submitted the scan
+         */
+        synchronized boolean attachScan(long scanId) {
+            this.scanId = scanId;
+            return supersededBy == null;
+        }
+
+        /**
+         * Supersedes the build if it has not submitted its scan yet.
+         *
+         * @return false if it submitted the scan meanwhile or was already superseded
+         */
+        synchronized boolean supersedeUnsubmitted(String buildName) {
+            if (scanId > 0 || supersededBy != null) {
+                return false;
+            }
+            supersededBy = buildName;
+            return true;
+        }
+
+        /**
+         * Starts canceling the queued scan of the build, end with {@link #endCancel(String)}.
+         *
+         * @return false if another build is canceling it or it was already superseded
+         */
+        synchronized boolean beginCancel() {
+            if (canceling || supersededBy != null) {
+                return false;
+            }
+            canceling = true;
+            return true;
+        }
+
+        /**
+         * @param buildName the superseding build if the server confirmed the cancellation, null otherwise
+         */
+        synchronized void endCancel(String buildName) {
+            canceling = false;
+            supersededBy = buildName;
+            notifyAll();
+        }
+
+        /**
+         * Waits for a cancellation in progress, the build may see its scan canceled before the cancel call returns.
+         *
+         * @return the build that superseded this one, null if it was not superseded
+         */
+        synchronized String awaitSupersededBy() throws InterruptedException {
+            while (canceling) {
+                wait();
+            }
+            return supersededBy;
+        }
+
+        String getBuildName() {
+            return buildName;
+        }
+
+        /**
+         * @return the build that superseded this one, null if it was not superseded
+         */
+        String getSupersededBy() {
+            return supersededBy;
+        }
+
+        @Override
+        public void close() {
+            synchronized (ACTIVE) {
+                List<Ticket> builds = ACTIVE.get(projectKey);
+                if (builds != null && builds.remove(this) && builds.isEmpty()) {
+                    ACTIVE.remove(projectKey);
+                }
+            }
+        }
+    }
+}
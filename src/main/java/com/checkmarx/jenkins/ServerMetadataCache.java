@@ -0,0 +1,157 @@
+package com.checkmarx.jenkins;
+
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server scoped cache of the lists shown on the job configuration page (projects, presets, teams, ...).
+ * The team list is also used to resolve the team of freestyle jobs on every build.
+ * <p>
+ * The first request for a list loads it synchronously, concurrent requests wait for the same load. Afterwards
+ * the cached list is always served from memory: once it is older than the configured TTL, the stale list is
+ * returned and a reload is started on a background thread.
+ */
+class ServerMetadataCache {
+
+    static final int DEFAULT_TTL_MINUTES = 10;
+    private static final int MAX_ENTRIES = 128;
+    // A list is not reloaded on a miss more often than this.
+    private static final int MIN_RELOAD_SECONDS = 30;
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    enum Type {
+        PROJECTS, PRESETS, TEAMS, POST_SCAN_ACTIONS, CONFIGURATIONS
+    }
+
+    interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    // Access ordered, the least recently used list is dropped first.
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * @param serverKey identifies the server and credentials the list belongs to
+     * @param ttlMinutes time after which the list is reloaded in the background, 0 disables caching
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String serverKey, Type type, int ttlMinutes, Loader<T> loader) throws Exception {
+        if (ttlMinutes <= 0) {
+            return loader.load();
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(serverKey + '|' + type, k -> new Entry(type));
+        }
+        entry.loader = loader;
+
+        synchronized (entry) {
+            if (entry.value == null) {
+                entry.value = loader.load();
+                entry.loadedAt = System.currentTimeMillis();
+                return (T) entry.value;
+            }
+        }
+
+        if (System.currentTimeMillis() - entry.loadedAt > TimeUnit.MINUTES.toMillis(ttlMinutes)) {
+            refreshInBackground(entry);
+        }
+        return (T) entry.value;
+    }
+
+    /**
+     * Reloads the list right away, e.g. when an item looked up in it is missing. A list that was loaded
+     * very recently is returned as is, so repeated misses do not reach the server on every call.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T reload(String serverKey, Type type, int ttlMinutes, Loader<T> loader) throws Exception {
+        if (ttlMinutes <= 0) {
+            return loader.load();
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(serverKey + '|' + type, k -> new Entry(type));
+        }
+        entry.loader = loader;
+
+        synchronized (entry) {
+            if (entry.value == null || System.currentTimeMillis() - entry.loadedAt > TimeUnit.SECONDS.toMillis(MIN_RELOAD_SECONDS)) {
+                entry.value = loader.load();
+                entry.loadedAt = System.currentTimeMillis();
+            }
+            return (T) entry.value;
+        }
+    }
+
+    /**
+     * Starts a background reload of every cached list of the given server. Stale lists keep being served
+     * until their reload completes.
+     *
+     * @return number of lists being reloaded
+     */
+    int refresh(String serverKey) {
+        List<Entry> toRefresh = new ArrayList<>();
+        synchronized (entries) {
+            for (Type type : Type.values()) {
+                Entry entry = entries.get(serverKey + '|' + type);
+                if (entry != null) {
+                    toRefresh.add(entry);
+                }
+            }
+        }
+        toRefresh.forEach(this::refreshInBackground);
+        return toRefresh.size();
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private void refreshInBackground(Entry entry) {
+        if (entry.loader == null || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Timer.get().submit(() -> {
+            try {
+                Object value = entry.loader.load();
+                synchronized (entry) {
+                    entry.value = value;
+                    entry.loadedAt = System.currentTimeMillis();
+                }
+            } catch (Exception e) {
+                // Keep serving the stale list, the next request retries.
+                serverLog.warn("Failed to refresh Checkmarx " + entry.type + " list: " + e.getMessage());
+            } finally {
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    private static final class Entry {
+        private final Type type;
+        private volatile Object value;
+        private volatile long loadedAt;
+        private volatile Loader<?> loader;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(Type type) {
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.checkmarx.jenkins;
+
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Workspace digest of the last successful SAST scan of each Checkmarx project, see {@link WorkspaceDigest}.
+ * <p>
+ * Kept on the controller in a properties file of the Jenkins home directory, one entry per server and project:
+ * {@code <digest>:<scan id>}.
+ */
+final class SourceDigestStore {
+
+    static final String FILE_NAME = "checkmarx-source-digests.properties";
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    private static Properties entries;
+
+    private SourceDigestStore() {
+    }
+
+    static String keyOf(String serverUrl, String teamPath, String projectName) {
+        return LegacyClientSessionCache.sha256(serverUrl + '|' + teamPath + '|' + projectName);
+    }
+
+    /**
+     * @return the digest and scan id of the last successful scan of the project, null if none was recorded
+     */
+    static synchronized Entry get(String key) {
+        String value = load().getProperty(key);
+        int separator = value == null ? -1 : value.lastIndexOf(':');
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            return new Entry(value.substring(0, separator), Long.parseLong(value.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static synchronized void put(String key, String digest, long scanId) {
+        Properties properties = load();
+        String value = digest + ':' + scanId;
+        if (value.equals(properties.getProperty(key))) {
+            return;
+        }
+        properties.setProperty(key, value);
+        File file = getFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                properties.store(out, null);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            serverLog.warn("Failed to save Checkmarx source digests: " + e.getMessage());
+        }
+    }
+
+    private static Properties load() {
+        if (entries == null) {
+            entries = new Properties();
+            File file = getFile();
+            if (file.exists()) {
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    entries.load(in);
+                } catch (IOException e) {
+                    serverLog.warn("Failed to read Checkmarx source digests: " + e.getMessage());
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static File getFile() {
+        return new File(Jenkins.get().getRootDir(), FILE_NAME);
+    }
+
+    static final class Entry {
+        private final String digest;
+        private final long scanId;
+
+        private Entry(String digest, long scanId) {
+            this.digest = digest;
+            this.scanId = scanId;
+        }
+
+        String getDigest() {
+            return digest;
+        }
+
+        long getScanId() {
+            return scanId;
+        }
+    }
+}
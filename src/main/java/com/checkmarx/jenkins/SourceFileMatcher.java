@@ -0,0 +1,153 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.types.selectors.TokenizedPattern;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Selects the workspace files of a SAST scan from the SAST filter pattern and folder exclusions.
+ * <p>
+ * The patterns are compiled once. Directories whose whole content is excluded are not walked, the remaining
+ * tree is walked on several threads.
+ */
+final class SourceFileMatcher {
+
+    private final List<TokenizedPattern> includes = new ArrayList<>();
+    private final List<TokenizedPattern> excludes = new ArrayList<>();
+    // Excludes ending with "**", a directory they match is skipped with all of its content.
+    private final List<TokenizedPattern> excludedDirectories = new ArrayList<>();
+
+    /**
+     * @param filterPattern    comma separated wildcard patterns, excludes start with {@code !}
+     * @param folderExclusions comma separated folder names, excluded at any depth
+     */
+    SourceFileMatcher(String filterPattern, String folderExclusions) {
+        // Reports of previous builds are written to the workspace, they are not sources.
+        addExclude(ReportSink.REPORTS_FOLDER + "/**");
+        for (String pattern : StringUtils.split(StringUtils.defaultString(filterPattern), ",\n")) {
+            String trimmed = pattern.trim();
+            if (trimmed.startsWith("!")) {
+                addExclude(trimmed.substring(1).trim());
+            } else if (!trimmed.isEmpty()) {
+                includes.add(new TokenizedPattern(normalize(trimmed)));
+            }
+        }
+        for (String folder : StringUtils.split(StringUtils.defaultString(folderExclusions), ",\n")) {
+            if (StringUtils.isNotBlank(folder)) {
+                addExclude("**/" + folder.trim() + "/**");
+            }
+        }
+    }
+
+    private void addExclude(String pattern) {
+        TokenizedPattern tokenized = new TokenizedPattern(normalize(pattern));
+        excludes.add(tokenized);
+        if (tokenized.endsWith("**")) {
+            excludedDirectories.add(tokenized.withoutLastToken());
+        }
+    }
+
+    /**
+     * @param relativePath path of a file relative to the workspace
+     */
+    boolean matches(String relativePath) {
+        TokenizedPath path = new TokenizedPath(normalize(relativePath));
+        for (TokenizedPattern exclude : excludes) {
+            if (exclude.matchPath(path, true)) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (TokenizedPattern include : includes) {
+            if (include.matchPath(path, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExcludedDirectory(String relativePath) {
+        TokenizedPath path = new TokenizedPath(normalize(relativePath));
+        for (TokenizedPattern exclude : excludedDirectories) {
+            if (exclude.matchPath(path, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return paths of the selected files relative to the base directory, with {@code /} separators, sorted
+     */
+    List<String> select(File baseDir, int threads) throws IOException, InterruptedException {
+        ConcurrentLinkedQueue<String> selected = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            pool.submit(new Walk(baseDir.toPath(), "", selected)).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        List<String> files = new ArrayList<>(selected);
+        Collections.sort(files);
+        return files;
+    }
+
+    private static String normalize(String path) {
+        return path.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+    }
+
+    private final class Walk extends RecursiveAction {
+        private final Path dir;
+        private final String relativeDir;
+        private final ConcurrentLinkedQueue<String> selected;
+
+        private Walk(Path dir, String relativeDir, ConcurrentLinkedQueue<String> selected) {
+            this.dir = dir;
+            this.relativeDir = relativeDir;
+            this.selected = selected;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walk> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String relativePath = relativeDir + entry.getFileName();
+                    // Linked directories are not followed, they could form a cycle.
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!isExcludedDirectory(relativePath)) {
+                            subdirectories.add(new Walk(entry, relativePath + "/", selected));
+                        }
+                    } else if (Files.isRegularFile(entry) && matches(relativePath)) {
+                        selected.add(relativePath);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+}
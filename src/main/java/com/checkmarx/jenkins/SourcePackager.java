@@ -0,0 +1,118 @@
+package com.checkmarx.jenkins;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+
+/**
+ * Zips the sources of a scan on the node that runs it, using all of its cores.
+ * <p>
+ * The files are selected by a {@link SourceFileMatcher} and compressed concurrently, the compressed entries are
+ * then written to the zip in path order.
+ */
+final class SourcePackager {
+
+    private final SourceFileMatcher matcher;
+    private final int threads;
+
+    SourcePackager(SourceFileMatcher matcher) {
+        this(matcher, Runtime.getRuntime().availableProcessors());
+    }
+
+    SourcePackager(SourceFileMatcher matcher, int threads) {
+        this.matcher = matcher;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param baseDir directory whose selected files are zipped, entries are relative to it
+     * @param zipFile zip to create, replaced if it exists
+     */
+    Summary pack(File baseDir, File zipFile) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        List<String> files = matcher.select(baseDir, threads);
+
+        long bytes = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new NamingThreadFactory(
+                new DaemonThreadFactory(), "Checkmarx source packaging"));
+        // The creator shuts the executor down once the zip is written.
+        ParallelScatterZipCreator creator = new ParallelScatterZipCreator(executor);
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zipFile)) {
+            for (String path : files) {
+                File source = new File(baseDir, path);
+                ZipArchiveEntry entry = new ZipArchiveEntry(path);
+                entry.setMethod(ZipEntry.DEFLATED);
+                entry.setTime(source.lastModified());
+                bytes += source.length();
+                creator.addArchiveEntry(entry, open(source));
+            }
+            creator.writeTo(out);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Summary(files.size(), bytes, zipFile.length(), System.currentTimeMillis() - start);
+    }
+
+    private static InputStreamSupplier open(File source) {
+        return () -> {
+            try {
+                return Files.newInputStream(source.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    static final class Summary {
+        private final int files;
+        private final long bytes;
+        private final long zipBytes;
+        private final long millis;
+
+        private Summary(int files, long bytes, long zipBytes, long millis) {
+            this.files = files;
+            this.bytes = bytes;
+            this.zipBytes = zipBytes;
+            this.millis = millis;
+        }
+
+        int getFiles() {
+            return files;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        long getZipBytes() {
+            return zipBytes;
+        }
+
+        long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return files + " files, " + bytes / 1024 + " KB zipped to " + zipBytes / 1024 + " KB in " + millis + " ms";
+        }
+    }
+}
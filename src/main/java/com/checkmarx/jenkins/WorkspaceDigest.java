@@ -0,0 +1,90 @@
+package com.checkmarx.jenkins;
+
+import hudson.Util;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Content digest of the workspace files that a SAST scan uploads, i.e. the files selected by the SAST
+ * filter pattern and folder exclusions. Two workspaces with the same digest produce the same scan.
+ * <p>
+ * Files are read as streams on a few threads, the digest does not depend on their order on disk.
+ */
+final class WorkspaceDigest {
+
+    private static final int MAX_THREADS = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private WorkspaceDigest() {
+    }
+
+    /**
+     * @param filterPattern    SAST filter pattern, comma separated wildcard patterns, excludes start with {@code !}
+     * @param folderExclusions SAST folder exclusions, comma separated folder names
+     * @param settings         scan settings that change the results of the same sources, e.g. the preset
+     * @return hex encoded SHA-256 digest
+     */
+    static String compute(File baseDir, String filterPattern, String folderExclusions, String settings)
+            throws IOException, InterruptedException {
+        int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        List<String> files = new SourceFileMatcher(filterPattern, folderExclusions).select(baseDir, threads);
+
+        byte[][] hashes = new byte[files.size()][];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, files.size()).parallel()
+                    .forEach(i -> hashes[i] = hashFile(new File(baseDir, files.get(i))))).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        MessageDigest digest = newDigest();
+        digest.update(StringUtils.defaultString(settings).getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < files.size(); i++) {
+            digest.update((byte) 0);
+            digest.update(files.get(i).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(hashes[i]);
+        }
+        return Util.toHexString(digest.digest());
+    }
+
+    private static byte[] hashFile(File file) {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
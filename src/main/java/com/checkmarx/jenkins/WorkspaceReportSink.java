@@ -0,0 +1,42 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes reports to the {@value ReportSink#REPORTS_FOLDER} folder of a workspace on the local file system.
+ * Used by {@link CxScanCallable}, so the workspace copy of every report is written on the agent
+ * without a round trip through the controller. Text reports are written in UTF-8, whatever the platform of the agent.
+ */
+class WorkspaceReportSink implements ReportSink {
+
+    private final File reportsDir;
+
+    WorkspaceReportSink(File workspace) {
+        this.reportsDir = new File(workspace, REPORTS_FOLDER);
+    }
+
+    @Override
+    public void write(String fileName, byte[] content) throws IOException {
+        FileUtils.writeByteArrayToFile(new File(reportsDir, fileName), content);
+    }
+
+    @Override
+    public void write(String fileName, String content) throws IOException {
+        FileUtils.writeStringToFile(new File(reportsDir, fileName), content, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public OutputStream open(String fileName) throws IOException {
+        return FileUtils.openOutputStream(new File(reportsDir, fileName));
+    }
+
+    @Override
+    public String getLocation(String fileName) {
+        return new File(reportsDir, fileName).getAbsolutePath();
+    }
+}
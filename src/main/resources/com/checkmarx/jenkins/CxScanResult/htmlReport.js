@@ -0,0 +1,27 @@
+// Sizes the embedded Checkmarx HTML reports to their content. A report that cannot be measured keeps the
+// default height of its frame and scrolls.
+(function () {
+    function resize(frame) {
+        try {
+            frame.style.height = (frame.contentWindow.document.body.scrollHeight + 20) + 'px';
+        } catch (e) {
+            // Not accessible from this page.
+        }
+    }
+
+    document.addEventListener('DOMContentLoaded', function () {
+        var frames = document.querySelectorAll('iframe.cx-html-report');
+        for (var i = 0; i < frames.length; i++) {
+            (function (frame) {
+                frame.addEventListener('load', function () {
+                    resize(frame);
+                });
+                // The report may have loaded before this page.
+                var loaded = frame.contentDocument;
+                if (loaded && loaded.readyState === 'complete' && loaded.URL !== 'about:blank') {
+                    resize(frame);
+                }
+            })(frames[i]);
+        }
+    });
+})();
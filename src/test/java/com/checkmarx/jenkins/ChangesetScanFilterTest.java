@@ -0,0 +1,126 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import hudson.model.Job;
+import hudson.model.Run;
+import jenkins.scm.RunWithSCM;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangesetScanFilterTest {
+
+    private static final String SETTINGS = "settings-1";
+
+    @TempDir
+    Path jobDir;
+
+    @TempDir
+    Path reportsDir;
+
+    private Job<?, ?> job;
+    private CxScanConfig config;
+
+    @BeforeEach
+    void init() {
+        job = Mockito.mock(Job.class);
+        Mockito.doReturn(jobDir.toFile()).when(job).getRootDir();
+        config = Mockito.mock(CxScanConfig.class);
+        Mockito.doReturn(true).when(config).isSastEnabled();
+        Mockito.doReturn(false).when(config).isAstScaEnabled();
+        Mockito.doReturn(false).when(config).isOsaEnabled();
+        Mockito.doReturn(CxConfig.defaultFilterPattern()).when(config).getSastFilterPattern();
+        Mockito.doReturn("").when(config).getSastFolderExclusions();
+    }
+
+    @Test
+    void isDependencyManifest_MatchesFileNames() {
+        assertTrue(ChangesetScanFilter.isDependencyManifest("pom.xml"));
+        assertTrue(ChangesetScanFilter.isDependencyManifest("web/package-lock.json"));
+        assertTrue(ChangesetScanFilter.isDependencyManifest("api\\Gemfile.lock"));
+        assertTrue(ChangesetScanFilter.isDependencyManifest("src/App/App.csproj"));
+        assertFalse(ChangesetScanFilter.isDependencyManifest("docs/pom.xml.md"));
+        assertFalse(ChangesetScanFilter.isDependencyManifest("README.md"));
+    }
+
+    @Test
+    void noScannedBuild_Scans() {
+        assertNull(ChangesetScanFilter.skipReason(build(2, null, "README.md"), config, SETTINGS));
+    }
+
+    @Test
+    void unscannableChanges_Skipped() throws IOException {
+        Run<?, ?> scanned = build(1, null, "src/App.java");
+        record(scanned);
+        Run<?, ?> failed = build(2, scanned, "assets/banner.svg");
+
+        assertEquals("none of the 2 files changed since build #1 is selected by the SAST filters",
+                ChangesetScanFilter.skipReason(build(3, failed, "docs/logo.png"), config, SETTINGS));
+    }
+
+    @Test
+    void sourceChangeInEarlierBuild_Scans() throws IOException {
+        Run<?, ?> scanned = build(1, null, "docs/logo.png");
+        record(scanned);
+        Run<?, ?> failed = build(2, scanned, "src/App.java");
+
+        assertNull(ChangesetScanFilter.skipReason(build(3, failed, "docs/logo.png"), config, SETTINGS));
+    }
+
+    @Test
+    void manifestChange_ScansDependencies() throws IOException {
+        Mockito.doReturn(true).when(config).isAstScaEnabled();
+        Run<?, ?> scanned = build(1, null, "src/App.java");
+        record(scanned);
+
+        assertNull(ChangesetScanFilter.skipReason(build(2, scanned, "pom.xml"), config, SETTINGS));
+        assertEquals("none of the 1 files changed since build #1 is selected by the SAST filters or a dependency manifest",
+                ChangesetScanFilter.skipReason(build(2, scanned, "docs/logo.png"), config, SETTINGS));
+    }
+
+    @Test
+    void otherSettings_Scans() throws IOException {
+        Run<?, ?> scanned = build(1, null, "src/App.java");
+        record(scanned);
+
+        assertNull(ChangesetScanFilter.skipReason(build(2, scanned, "docs/logo.png"), config, "settings-2"));
+    }
+
+    @Test
+    void carryForward_CopiesReportsOfLastScannedBuild() throws IOException {
+        Files.write(reportsDir.resolve("Report.html"), "report".getBytes());
+        record(build(1, null, "src/App.java"));
+
+        File target = Files.createDirectory(jobDir.resolve("build-2")).toFile();
+        RemoteScanInfo scanInfo = ChangesetScanFilter.carryForward(job, target);
+
+        assertNotNull(scanInfo);
+        assertEquals(1, ChangesetScanFilter.getLastScannedBuild(job));
+        assertTrue(new File(target, "Report.html").isFile());
+    }
+
+    private void record(Run<?, ?> run) throws IOException {
+        RemoteScanInfo scanInfo = new RemoteScanInfo();
+        scanInfo.setBuildPageReports(Collections.singletonList("Report.html"));
+        ChangesetScanFilter.recordScannedBuild(run, SETTINGS, ScanResultsTransport.serialize(scanInfo), reportsDir.toFile());
+    }
+
+    private Run<?, ?> build(int number, Run<?, ?> previous, String... paths) {
+        Run<?, ?> run = Mockito.mock(Run.class, Mockito.withSettings().extraInterfaces(RunWithSCM.class));
+        Mockito.doReturn(job).when(run).getParent();
+        Mockito.doReturn(number).when(run).getNumber();
+        Mockito.doReturn(previous).when(run).getPreviousBuild();
+        Mockito.doReturn(Collections.singletonList(FullScanPolicyTest.changeSet(paths)))
+                .when((RunWithSCM<?, ?>) run).getChangeSets();
+        return run;
+    }
+}
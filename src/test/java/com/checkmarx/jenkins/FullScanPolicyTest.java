@@ -0,0 +1,102 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.scm.ChangeLogSet;
+import jenkins.scm.RunWithSCM;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FullScanPolicyTest {
+
+    @TempDir
+    Path jobDir;
+
+    private Job<?, ?> job;
+
+    @BeforeEach
+    void init() {
+        job = Mockito.mock(Job.class);
+        Mockito.doReturn(jobDir.toFile()).when(job).getRootDir();
+    }
+
+    @Test
+    void firstBuild_SeedsStateAndScansIncrementally() {
+        FullScanPolicy policy = new FullScanPolicy(1, 1, 1);
+
+        assertNull(policy.fullScanReason(build(1, "src/App.java")));
+        assertTrue(new File(jobDir.toFile(), FullScanPolicy.FILE_NAME).isFile());
+    }
+
+    @Test
+    void scanCycle_FullScanAfterIncrementalScans() {
+        FullScanPolicy policy = new FullScanPolicy(2, 0, 0);
+        assertNull(policy.fullScanReason(build(1)));
+        FullScanPolicy.recordScan(job, false);
+        assertNull(policy.fullScanReason(build(2)));
+        FullScanPolicy.recordScan(job, false);
+
+        assertEquals("2 incremental scans since the last full scan", policy.fullScanReason(build(3)));
+
+        FullScanPolicy.recordScan(job, true);
+        assertNull(policy.fullScanReason(build(4)));
+    }
+
+    @Test
+    void maxChangedFiles_CountsDistinctFilesOfEachBuildOnce() {
+        FullScanPolicy policy = new FullScanPolicy(0, 3, 0);
+        assertNull(policy.fullScanReason(build(1, "src/App.java")));
+        assertNull(policy.fullScanReason(build(2, "src/App.java", "src/Dao.java")));
+
+        Run<?, ?> build = build(3, "src/App.java", "src/Config.java");
+        assertEquals("4 files changed in 2 commits since the last full scan", policy.fullScanReason(build));
+        // A rebuild of the same build does not count its changes again.
+        assertEquals("4 files changed in 2 commits since the last full scan", policy.fullScanReason(build));
+
+        FullScanPolicy.recordScan(job, true);
+        assertNull(policy.fullScanReason(build(4, "README.md")));
+    }
+
+    @Test
+    void noLimits_ScansIncrementally() {
+        FullScanPolicy policy = new FullScanPolicy(0, 0, 0);
+        assertNull(policy.fullScanReason(build(1)));
+        FullScanPolicy.recordScan(job, false);
+
+        assertNull(policy.fullScanReason(build(2, "src/App.java")));
+    }
+
+    // A build with one commit changing the given files.
+    private Run<?, ?> build(int number, String... paths) {
+        Run<?, ?> run = Mockito.mock(Run.class, Mockito.withSettings().extraInterfaces(RunWithSCM.class));
+        Mockito.doReturn(job).when(run).getParent();
+        Mockito.doReturn(number).when(run).getNumber();
+        List<ChangeLogSet<?>> changeSets = paths.length == 0
+                ? Collections.emptyList() : Collections.singletonList(changeSet(paths));
+        Mockito.doReturn(changeSets).when((RunWithSCM<?, ?>) run).getChangeSets();
+        return run;
+    }
+
+    static ChangeLogSet<?> changeSet(String... paths) {
+        ChangeLogSet.AffectedFile[] files = new ChangeLogSet.AffectedFile[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            files[i] = Mockito.mock(ChangeLogSet.AffectedFile.class);
+            Mockito.doReturn(paths[i]).when(files[i]).getPath();
+        }
+        ChangeLogSet.Entry entry = Mockito.mock(ChangeLogSet.Entry.class);
+        Mockito.doReturn(Arrays.asList(files)).when(entry).getAffectedFiles();
+        ChangeLogSet<?> changeSet = Mockito.mock(ChangeLogSet.class);
+        Mockito.doAnswer(invocation -> Collections.singletonList(entry).iterator()).when(changeSet).iterator();
+        return changeSet;
+    }
+}
@@ -0,0 +1,102 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.sast.dto.CxXMLResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SastResultFilterTest {
+
+    private final CxLoggerAdapter log = Mockito.mock(CxLoggerAdapter.class);
+
+    @Test
+    void defaults_DropNotExploitableResults() {
+        SASTResults sast = results(query("SQL_Injection", "High",
+                result("0", "src/App.java"), result("1", "src/Dao.java")));
+
+        SastResultFilter.defaults().apply(sast, log);
+
+        assertEquals(1, sast.getQueryList().size());
+        assertEquals(Arrays.asList("src/App.java"), fileNames(sast.getQueryList().get(0)));
+        Mockito.verify(log).info("SAST results dropped by filter (state: 1).");
+    }
+
+    @Test
+    void stages_DropResultsAndCountThemOnce() {
+        SastResultFilter.Settings settings = new SastResultFilter.Settings();
+        settings.setStates("1");
+        settings.setSeverities("Low, Information");
+        settings.setQueries("Hardcoded_Password");
+        settings.setPaths("**/test/**");
+        SASTResults sast = results(
+                query("SQL_Injection", "High",
+                        result("0", "src/App.java"), result("1", "src/Dao.java"), result("0", "src\\test\\AppTest.java")),
+                query("Log_Forging", "Low", result("0", "src/App.java"), result("0", "src/Dao.java")),
+                query("Hardcoded_Password", "Medium", result("0", "src/Config.java")));
+
+        SastResultFilter.of(settings).apply(sast, log);
+
+        assertEquals(1, sast.getQueryList().size());
+        assertEquals(Arrays.asList("src/App.java"), fileNames(sast.getQueryList().get(0)));
+        Mockito.verify(log).info("SAST results dropped by filter (state: 1, severity: 2, query: 1, path: 1).");
+        Mockito.verify(log).info("Skipped 2 SAST queries without results.");
+    }
+
+    @Test
+    void firstRejectingStage_CountsTheResult() {
+        SastResultFilter.Settings settings = new SastResultFilter.Settings();
+        settings.setStates("1");
+        settings.setPaths("src/**");
+        SASTResults sast = results(query("SQL_Injection", "High", result("1", "src/Dao.java")));
+
+        SastResultFilter.of(settings).apply(sast, log);
+
+        assertTrue(sast.getQueryList().isEmpty());
+        Mockito.verify(log).info("SAST results dropped by filter (state: 1).");
+    }
+
+    @Test
+    void emptySettings_KeepAllResults() {
+        SASTResults sast = results(query("SQL_Injection", "High", result("1", "src/Dao.java")));
+
+        SastResultFilter.of(new SastResultFilter.Settings()).apply(sast, log);
+
+        assertEquals(1, sast.getQueryList().get(0).getResult().size());
+        Mockito.verifyNoInteractions(log);
+    }
+
+    private static SASTResults results(CxXMLResults.Query... queries) {
+        SASTResults sast = new SASTResults();
+        sast.setQueryList(new ArrayList<>(Arrays.asList(queries)));
+        return sast;
+    }
+
+    private static CxXMLResults.Query query(String name, String severity, CxXMLResults.Query.Result... results) {
+        CxXMLResults.Query query = new CxXMLResults.Query();
+        query.setName(name);
+        query.setSeverity(severity);
+        query.getResult().addAll(Arrays.asList(results));
+        return query;
+    }
+
+    private static CxXMLResults.Query.Result result(String state, String fileName) {
+        CxXMLResults.Query.Result result = new CxXMLResults.Query.Result();
+        result.setState(state);
+        result.setFileName(fileName);
+        return result;
+    }
+
+    private static List<String> fileNames(CxXMLResults.Query query) {
+        List<String> fileNames = new ArrayList<>();
+        for (CxXMLResults.Query.Result result : query.getResult()) {
+            fileNames.add(result.getFileName());
+        }
+        return fileNames;
+    }
+}
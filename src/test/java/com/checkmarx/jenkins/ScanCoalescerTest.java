@@ -0,0 +1,65 @@
+package com.checkmarx.jenkins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanCoalescerTest {
+
+    @TempDir
+    Path reportsDir;
+
+    @Test
+    void join_FirstBuildLeadsOthersWait() {
+        ScanCoalescer.Flight leader = ScanCoalescer.join("lead", "job #1");
+        ScanCoalescer.Flight follower = ScanCoalescer.join("lead", "job #2");
+
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+        assertEquals("job #1", follower.getLeaderName());
+        assertTrue(ScanCoalescer.join("other", "job #3").isLeader());
+        leader.complete(null);
+    }
+
+    @Test
+    void complete_WaitingBuildsGetTheirOwnCopy() throws Exception {
+        ScanCoalescer.Flight leader = ScanCoalescer.join("copy", "job #1");
+        ScanCoalescer.Flight follower = ScanCoalescer.join("copy", "job #2");
+        RemoteScanInfo scanInfo = new RemoteScanInfo();
+        scanInfo.setHtmlReportName("Report.html");
+        leader.prepare(ScanResultsTransport.serialize(scanInfo));
+        File dir = reportsDir.toFile();
+
+        leader.complete(dir);
+        ScanCoalescer.Outcome outcome = follower.await(1);
+
+        assertEquals(dir, outcome.getReportsDir());
+        RemoteScanInfo first = outcome.newScanInfo();
+        assertEquals("Report.html", first.getHtmlReportName());
+        assertNotSame(first, outcome.newScanInfo());
+    }
+
+    @Test
+    void complete_WithoutResults() throws Exception {
+        ScanCoalescer.Flight leader = ScanCoalescer.join("failed", "job #1");
+        ScanCoalescer.Flight follower = ScanCoalescer.join("failed", "job #2");
+
+        leader.complete(reportsDir.toFile());
+
+        assertNull(follower.await(0));
+    }
+
+    @Test
+    void complete_NextBuildLeadsNewFlight() {
+        ScanCoalescer.join("again", "job #1").complete(null);
+
+        ScanCoalescer.Flight next = ScanCoalescer.join("again", "job #2");
+
+        assertTrue(next.isLeader());
+        next.complete(null);
+    }
+}
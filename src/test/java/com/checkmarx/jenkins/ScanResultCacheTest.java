@@ -0,0 +1,77 @@
+package com.checkmarx.jenkins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanResultCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @TempDir
+    Path reportsDir;
+
+    @Test
+    void evict_DropsLeastRecentlyUsedEntriesOverLimit() throws IOException {
+        File oldest = entry("oldest", 1000);
+        File older = entry("older", 2000);
+        File recent = entry("recent", 3000);
+
+        ScanResultCache.evict(cacheDir.toFile(), 150);
+
+        assertFalse(oldest.exists());
+        assertFalse(older.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    void evict_KeepsEntriesWithinLimit() throws IOException {
+        File oldest = entry("oldest", 1000);
+        File recent = entry("recent", 2000);
+
+        ScanResultCache.evict(cacheDir.toFile(), 200);
+
+        assertTrue(oldest.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    void writeRead_CopiesBuildPageAndWorkspaceReports() throws IOException, ClassNotFoundException {
+        Files.write(reportsDir.resolve("Report.html"), "report".getBytes());
+        Path workspaceReports = Files.createDirectory(reportsDir.resolve(ScanResultCache.WORKSPACE_REPORTS_DIR));
+        Files.write(workspaceReports.resolve("ScanReport.xml"), "xml".getBytes());
+        RemoteScanInfo scanInfo = new RemoteScanInfo();
+        scanInfo.setHtmlReportName("Report.html");
+        scanInfo.setBuildPageReports(Collections.singletonList("Report.html"));
+        File entry = cacheDir.resolve("key").toFile();
+
+        ScanResultCache.write(entry, ScanResultsTransport.serialize(scanInfo), reportsDir.toFile());
+        File target = Files.createDirectory(cacheDir.resolve("build")).toFile();
+        RemoteScanInfo cached = ScanResultCache.read(entry, target);
+
+        assertEquals("Report.html", cached.getHtmlReportName());
+        assertTrue(new File(target, "Report.html").isFile());
+        assertTrue(new File(target, ScanResultCache.WORKSPACE_REPORTS_DIR + "/ScanReport.xml").isFile());
+    }
+
+    @Test
+    void read_MissingEntry() throws IOException, ClassNotFoundException {
+        assertNull(ScanResultCache.read(cacheDir.resolve("missing").toFile(), reportsDir.toFile()));
+    }
+
+    // An entry of 100 bytes last used at the given time.
+    private File entry(String key, long lastUsed) throws IOException {
+        File entry = Files.createDirectory(cacheDir.resolve(key)).toFile();
+        Files.write(new File(entry, "results.bin").toPath(), new byte[100]);
+        assertTrue(entry.setLastModified(lastUsed));
+        return entry;
+    }
+}
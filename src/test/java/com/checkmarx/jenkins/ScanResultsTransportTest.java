@@ -0,0 +1,53 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.dto.ScanResults;
+import com.cx.restclient.dto.ScannerType;
+import com.cx.restclient.sast.dto.CxXMLResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanResultsTransportTest {
+
+    @Test
+    void packUnpack_KeepsSummaryAndDropsDetails() throws IOException, ClassNotFoundException {
+        SASTResults sast = new SASTResults();
+        sast.setScanId(42);
+        sast.setQueryList(new ArrayList<>(Collections.singletonList(new CxXMLResults.Query())));
+        ScanResults results = new ScanResults();
+        results.put(ScannerType.SAST, sast);
+
+        ScanResultsTransport.stripDetails(results);
+        ScanResults unpacked = ScanResultsTransport.unpack(ScanResultsTransport.pack(results));
+
+        assertNotSame(results, unpacked);
+        assertEquals(42, unpacked.getSastResults().getScanId());
+        assertTrue(unpacked.getSastResults().getQueryList().isEmpty());
+    }
+
+    @Test
+    void serialize_ReturnsIndependentCopy() throws IOException, ClassNotFoundException {
+        RemoteScanInfo scanInfo = new RemoteScanInfo();
+        scanInfo.setBuildPageReports(new ArrayList<>(Collections.singletonList("Report.html")));
+        byte[] snapshot = ScanResultsTransport.serialize(scanInfo);
+        scanInfo.getBuildPageReports().add("Report.pdf");
+
+        RemoteScanInfo copy = (RemoteScanInfo) ScanResultsTransport.deserialize(snapshot);
+
+        assertEquals(Collections.singletonList("Report.html"), copy.getBuildPageReports());
+    }
+
+    @Test
+    void deserialize_RejectsClassesBlockedByRemoting() throws IOException {
+        byte[] payload = ScanResultsTransport.serialize(new Point(1, 2));
+
+        assertThrows(InvalidClassException.class, () -> ScanResultsTransport.deserialize(payload));
+    }
+}
@@ -0,0 +1,87 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Run;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanSupersessionTest {
+
+    @Test
+    void start_OlderBuildsOfSameProject() {
+        try (ScanSupersession.Ticket first = ScanSupersession.start("older", build("job #1"));
+             ScanSupersession.Ticket other = ScanSupersession.start("older-other", build("other #1"));
+             ScanSupersession.Ticket second = ScanSupersession.start("older", build("job #2"))) {
+            assertTrue(first.getOlder().isEmpty());
+            assertTrue(other.getOlder().isEmpty());
+            assertEquals(Collections.singletonList(first), second.getOlder());
+
+            first.close();
+            assertTrue(second.getOlder().isEmpty());
+        }
+    }
+
+    @Test
+    void supersedeUnsubmitted_BuildSkipsItsScan() {
+        try (ScanSupersession.Ticket first = ScanSupersession.start("unsubmitted", build("job #1"));
+             ScanSupersession.Ticket second = ScanSupersession.start("unsubmitted", build("job #2"))) {
+            assertTrue(first.supersedeUnsubmitted(second.getBuildName()));
+            assertFalse(first.supersedeUnsubmitted(second.getBuildName()));
+
+            assertFalse(first.attachScan(100));
+            assertEquals("job #2", first.getSupersededBy());
+            assertTrue(second.getOlder().isEmpty());
+        }
+    }
+
+    @Test
+    void supersedeUnsubmitted_SubmittedScanIsKept() {
+        try (ScanSupersession.Ticket first = ScanSupersession.start("submitted", build("job #1"))) {
+            assertTrue(first.attachScan(100));
+
+            assertFalse(first.supersedeUnsubmitted("job #2"));
+            assertEquals(100, first.getScanId());
+            assertNull(first.getSupersededBy());
+        }
+    }
+
+    @Test
+    void cancel_OneBuildCancelsAtATime() throws InterruptedException {
+        try (ScanSupersession.Ticket first = ScanSupersession.start("cancel", build("job #1"))) {
+            first.attachScan(100);
+            assertTrue(first.beginCancel());
+            assertFalse(first.beginCancel());
+
+            // The server did not confirm the cancellation.
+            first.endCancel(null);
+            assertNull(first.awaitSupersededBy());
+
+            assertTrue(first.beginCancel());
+            first.endCancel("job #3");
+            assertEquals("job #3", first.awaitSupersededBy());
+            assertFalse(first.beginCancel());
+        }
+    }
+
+    @Test
+    void awaitSupersededBy_WaitsForCancellationInProgress() throws Exception {
+        try (ScanSupersession.Ticket first = ScanSupersession.start("await", build("job #1"))) {
+            first.attachScan(100);
+            assertTrue(first.beginCancel());
+            Thread canceling = new Thread(() -> first.endCancel("job #2"));
+
+            canceling.start();
+            assertEquals("job #2", first.awaitSupersededBy());
+            canceling.join();
+        }
+    }
+
+    private static Run<?, ?> build(String name) {
+        Run<?, ?> run = Mockito.mock(Run.class);
+        Mockito.doReturn(name).when(run).getFullDisplayName();
+        return run;
+    }
+}
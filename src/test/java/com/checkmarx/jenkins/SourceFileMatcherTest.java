@@ -0,0 +1,95 @@
+package com.checkmarx.jenkins;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceFileMatcherTest {
+
+    private final SourceFileMatcher defaults = new SourceFileMatcher(CxConfig.defaultFilterPattern(), "");
+
+    @TempDir
+    Path workspace;
+
+    @Test
+    void defaultPatterns_IncludeSources() {
+        assertTrue(defaults.matches("Main.java"));
+        assertTrue(defaults.matches("src/main/java/App.java"));
+        assertTrue(defaults.matches("web/index.js"));
+    }
+
+    @Test
+    void defaultPatterns_ExcludeVersionControlAndBuildFolders() {
+        assertFalse(defaults.matches(".git/config"));
+        assertFalse(defaults.matches("module/.git/objects/ab/cdef"));
+        assertFalse(defaults.matches(".svn/entries"));
+        assertFalse(defaults.matches("bin/App.class"));
+        assertFalse(defaults.matches("module/obj/App.dll"));
+        assertFalse(defaults.matches(".idea/workspace.xml"));
+    }
+
+    @Test
+    void defaultPatterns_ExcludeFileTypes() {
+        assertFalse(defaults.matches("notes.bak"));
+        assertFalse(defaults.matches("src/cache.tmp"));
+        assertFalse(defaults.matches("media/song.mp3"));
+    }
+
+    @Test
+    void reportsFolder_Excluded() {
+        assertFalse(defaults.matches(ReportSink.REPORTS_FOLDER + "/Report.html"));
+        assertFalse(new SourceFileMatcher("", "").matches(ReportSink.REPORTS_FOLDER + "/Report.html"));
+    }
+
+    @Test
+    void includePatterns_OnlyMatchingFilesSelected() {
+        SourceFileMatcher matcher = new SourceFileMatcher("**/*.java, !**/test/**", "");
+        assertTrue(matcher.matches("A.java"));
+        assertTrue(matcher.matches("src/A.java"));
+        assertFalse(matcher.matches("src/A.js"));
+        assertFalse(matcher.matches("src/test/A.java"));
+    }
+
+    @Test
+    void folderExclusions_ExcludedAtAnyDepth() {
+        SourceFileMatcher matcher = new SourceFileMatcher(CxConfig.defaultFilterPattern(), "node_modules, target");
+        assertFalse(matcher.matches("node_modules/lib/index.js"));
+        assertFalse(matcher.matches("web/node_modules/lib/index.js"));
+        assertFalse(matcher.matches("module/target/App.java"));
+        assertTrue(matcher.matches("src/target.java"));
+    }
+
+    @Test
+    void backslashSeparators_Matched() {
+        assertFalse(defaults.matches("module\\.git\\config"));
+        assertTrue(defaults.matches("src\\main\\App.java"));
+    }
+
+    @Test
+    void select_WalksWorkspaceAndSkipsExcludedFiles() throws IOException, InterruptedException {
+        write("src/main/App.java");
+        write("src/main/App.bak");
+        write("web/node_modules/lib/index.js");
+        write("web/index.js");
+        write(".git/config");
+        write("README.md");
+        write(ReportSink.REPORTS_FOLDER + "/Report.html");
+
+        SourceFileMatcher matcher = new SourceFileMatcher(CxConfig.defaultFilterPattern(), "node_modules");
+        assertEquals(Arrays.asList("README.md", "src/main/App.java", "web/index.js"),
+                matcher.select(workspace.toFile(), 4));
+    }
+
+    private void write(String relativePath) throws IOException {
+        File file = workspace.resolve(relativePath).toFile();
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), relativePath.getBytes());
+    }
+}